@@ -0,0 +1,205 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes animals and plants to a stream and recreates them in another
+ * field. Used to move actors between the bands of a partitioned field,
+ * which live in different processes.
+ *
+ * Each actor is written as its species tag (its id in the Species
+ * registry), its row and column and then its individual state (see
+ * Animal.writeState and Plants.writeState).
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class ActorCodec
+{
+    /**
+     * Write a single actor.
+     * @param out Where to write the actor to.
+     * @param actor The animal or plant to write.
+     * @param row The row to record for the actor.
+     * @param col The column to record for the actor.
+     */
+    public static void write(DataOutput out, Object actor, int row, int col)
+        throws IOException
+    {
+        int tag = Species.getId(actor);
+        if(tag < 0) {
+            throw new IllegalArgumentException("Unknown species: " + actor.getClass());
+        }
+        out.writeByte(tag);
+        out.writeInt(row);
+        out.writeInt(col);
+        if(actor instanceof Animal) {
+            ((Animal) actor).writeState(out);
+        }
+        else {
+            ((Plants) actor).writeState(out);
+        }
+    }
+
+    /**
+     * Write a list of actors, each at the row of its location plus the
+     * given offset.
+     * @param out Where to write the actors to.
+     * @param actors The animals and plants to write.
+     * @param rowOffset Added to the row of every actor.
+     */
+    public static void writeAll(DataOutput out, List<?> actors, int rowOffset)
+        throws IOException
+    {
+        out.writeInt(actors.size());
+        for(Object actor : actors) {
+            Location location = getLocation(actor);
+            write(out, actor, location.getRow() + rowOffset, location.getCol());
+        }
+    }
+
+    /**
+     * Read the species tag and location of the next actor. The actor
+     * itself must then be created with create().
+     * @param in Where to read from.
+     * @return The tag, row and column of the next actor.
+     */
+    public static int[] readHeader(DataInput in) throws IOException
+    {
+        int tag = in.readByte();
+        int row = in.readInt();
+        int col = in.readInt();
+        return new int[] { tag, row, col };
+    }
+
+    /**
+     * Create an actor of the given species at a location in a field and
+     * give it the state read from the stream. It is recorded in the
+     * statistics and the death calendar of the field.
+     * @param in Where to read the state from.
+     * @param tag The species tag, as returned by readHeader.
+     * @param field The field to place the actor in.
+     * @param location Where to place the actor.
+     * @return The new Animal or Plants.
+     */
+    public static Object create(DataInput in, int tag, Field field, Location location)
+        throws IOException
+    {
+        return create(in, tag, field, location, true);
+    }
+
+    /**
+     * Create an actor of the given species at a location in a field and
+     * give it the state read from the stream. No random numbers are drawn
+     * from the shared generator: what a new actor of the species would
+     * draw (e.g. its gender) is taken from the state.
+     * @param in Where to read the state from.
+     * @param tag The species tag, as returned by readHeader.
+     * @param field The field to place the actor in.
+     * @param location Where to place the actor.
+     * @param record Whether to record the actor in the statistics and the
+     *               death calendar of the field; false for a copy of an
+     *               actor that lives elsewhere, such as a halo ghost.
+     * @return The new Animal or Plants.
+     */
+    public static Object create(DataInput in, int tag, Field field, Location location,
+                                boolean record)
+        throws IOException
+    {
+        // The constructors draw from the shared generator; let them draw
+        // from a stream of their own instead, as the state replaces it all.
+        RandomSource rand = Randomizer.getRandom();
+        rand.setThreadSeed(0);
+        Object actor;
+        try {
+            actor = Species.create(tag, field, location);
+        }
+        finally {
+            rand.clearThreadSeed();
+        }
+        if(actor instanceof Animal) {
+            ((Animal) actor).readState(in);
+        }
+        else {
+            ((Plants) actor).readState(in);
+        }
+        if(record) {
+            updateStats(actor);
+        }
+        return actor;
+    }
+
+    /**
+     * Skip the state of an actor that is not going to be created.
+     * @param in Where to read the state from.
+     * @param tag The species tag, as returned by readHeader.
+     */
+    public static void skip(DataInput in, int tag) throws IOException
+    {
+        // Recreate the actor in a scratch field and drop it.
+        create(in, tag, new Field(1, 1), new Location(0, 0), false);
+    }
+
+    /**
+     * @return The location of an animal or a plant.
+     */
+    public static Location getLocation(Object actor)
+    {
+        if(actor instanceof Animal) {
+            return ((Animal) actor).getLocation();
+        }
+        else {
+            return ((Plants) actor).getLocation();
+        }
+    }
+
+    /**
+     * @return Whether an animal or a plant is alive.
+     */
+    public static boolean isAlive(Object actor)
+    {
+        if(actor instanceof Animal) {
+            return ((Animal) actor).isAlive();
+        }
+        else {
+            return ((Plants) actor).isAlive();
+        }
+    }
+
+    /**
+     * Remove an animal or a plant from its field.
+     */
+    public static void remove(Object actor)
+    {
+        remove(actor, EventBus.REMOVED);
+    }
+
+    /**
+     * Remove an animal or a plant from its field because it died.
+     * @param cause The cause of death, e.g. EventBus.EATEN.
+     */
+    public static void remove(Object actor, int cause)
+    {
+        if(actor instanceof Animal) {
+            ((Animal) actor).setDead(cause);
+        }
+        else {
+            ((Plants) actor).setDead(cause);
+        }
+    }
+
+    /**
+     * Bring the entry of an animal or a plant in the statistics of its
+     * field up to date.
+     */
+    public static void updateStats(Object actor)
+    {
+        if(actor instanceof Animal) {
+            ((Animal) actor).updateStats();
+        }
+        else {
+            ((Plants) actor).updateStats();
+        }
+    }
+}
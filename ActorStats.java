@@ -0,0 +1,386 @@
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Statistics of the state of the living animals and plants of a field,
+ * per species: how many there are, how many are infected and how many
+ * are male, and the distribution of their ages and food levels.
+ *
+ * The statistics are not computed by walking the actors. Each actor
+ * adds itself when it is first recorded, moves its entry when it eats
+ * or its infection changes (see Animal.updateStats) and removes it when
+ * it dies. Ages and food levels change every step without the actors
+ * doing anything, so the actors are recorded by the step they were born
+ * in and the step they will starve in; the age or food level is the
+ * distance of that step from the current one (see setStep).
+ *
+ * Birth and starve steps are counted per step, for as many steps as
+ * the histograms cover, and older births in one count for the last
+ * bucket. The running sums of the steps and of their squares give the
+ * means and variances. So a step costs one update per species, and any
+ * query costs at most the number of steps a histogram covers.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class ActorStats
+{
+    // The number of buckets of a histogram. The last bucket also holds
+    // all values above it.
+    public static final int BUCKETS = 16;
+    // The width of the buckets of ages of each species, by id, so that
+    // the buckets cover the ages the species lives to.
+    private static final int[] AGE_BUCKET_WIDTHS = new int[Species.getCount()];
+    // The width of the buckets of food levels; food values are below BUCKETS.
+    private static final int FOOD_BUCKET_WIDTH = 1;
+    // The starve step of actors that do not get hungry.
+    public static final int NEVER = Integer.MAX_VALUE;
+
+    static {
+        AGE_BUCKET_WIDTHS[Species.ORCA] = 10;
+        AGE_BUCKET_WIDTHS[Species.SHARK] = 13;
+        AGE_BUCKET_WIDTHS[Species.SCUBADIVER] = 2;
+        AGE_BUCKET_WIDTHS[Species.SALMON] = 1;
+        AGE_BUCKET_WIDTHS[Species.SARDINE] = 1;
+        AGE_BUCKET_WIDTHS[Species.SEAWEED] = 2;
+    }
+
+    // The current step.
+    private int step;
+    // The number of actors, infected actors and males of each species.
+    private int[] counts, infected, males;
+    // The number of actors born in each of the last steps, per species,
+    // at birth step modulo the length of the array: the steps of the
+    // ages below those of the last bucket.
+    private int[][] births;
+    // The number of older actors per species, in the last bucket of ages.
+    private int[] elders;
+    // The sums of the birth steps and of their squares, per species.
+    private long[] birthSums, birthSquareSums;
+    // The number of actors starving in each of the next BUCKETS steps,
+    // at species * BUCKETS + starve step modulo BUCKETS.
+    private int[] starves;
+    // The number of actors with a food level, and the sums of their
+    // starve steps and of their squares, per species.
+    private int[] fed;
+    private long[] starveSums, starveSquareSums;
+
+    /**
+     * Create empty statistics.
+     */
+    public ActorStats()
+    {
+        int species = Species.getCount();
+        counts = new int[species];
+        infected = new int[species];
+        males = new int[species];
+        births = new int[species][];
+        for(int id = 0; id < species; id++) {
+            births[id] = new int[(BUCKETS - 1) * AGE_BUCKET_WIDTHS[id]];
+        }
+        elders = new int[species];
+        birthSums = new long[species];
+        birthSquareSums = new long[species];
+        starves = new int[species * BUCKETS];
+        fed = new int[species];
+        starveSums = new long[species];
+        starveSquareSums = new long[species];
+    }
+
+    /**
+     * Forget all actors and go back to step 0.
+     */
+    public void clear()
+    {
+        step = 0;
+        Arrays.fill(counts, 0);
+        Arrays.fill(infected, 0);
+        Arrays.fill(males, 0);
+        for(int[] speciesBirths : births) {
+            Arrays.fill(speciesBirths, 0);
+        }
+        Arrays.fill(elders, 0);
+        Arrays.fill(birthSums, 0);
+        Arrays.fill(birthSquareSums, 0);
+        Arrays.fill(starves, 0);
+        Arrays.fill(fed, 0);
+        Arrays.fill(starveSums, 0);
+        Arrays.fill(starveSquareSums, 0);
+    }
+
+    /**
+     * Go on to a later step: every actor gets older and hungrier by the
+     * steps in between.
+     * @param step The new step, not before the current one.
+     */
+    public void setStep(int step)
+    {
+        if(step < this.step) {
+            throw new IllegalArgumentException("Step " + step + " is before " + this.step);
+        }
+        for(int id = 0; id < births.length; id++) {
+            int[] speciesBirths = births[id];
+            // The births that reach the age of the last bucket.
+            int steps = Math.min(step - this.step, speciesBirths.length);
+            for(int i = 1; i <= steps; i++) {
+                int slot = Math.floorMod(this.step + i, speciesBirths.length);
+                elders[id] += speciesBirths[slot];
+                speciesBirths[slot] = 0;
+            }
+        }
+        this.step = step;
+    }
+
+    /**
+     * Add an actor.
+     * @param species The id of its species.
+     * @param birthStep The step it was born in, not after the current one.
+     * @param starveStep The step in which its food level reaches 0, less
+     *                   than BUCKETS steps ahead, or NEVER if it does not
+     *                   get hungry.
+     * @param isInfected Whether it is infected.
+     * @param isMale Whether it is male.
+     */
+    public void add(int species, int birthStep, int starveStep, boolean isInfected,
+                    boolean isMale)
+    {
+        change(species, birthStep, starveStep, isInfected, isMale, 1);
+    }
+
+    /**
+     * Remove an actor that was added with the same values.
+     * @param species The id of its species.
+     * @param birthStep The step it was born in.
+     * @param starveStep The step in which its food level reaches 0, or NEVER.
+     * @param isInfected Whether it is infected.
+     * @param isMale Whether it is male.
+     */
+    public void remove(int species, int birthStep, int starveStep, boolean isInfected,
+                       boolean isMale)
+    {
+        change(species, birthStep, starveStep, isInfected, isMale, -1);
+    }
+
+    /**
+     * Add (delta 1) or remove (delta -1) an actor.
+     */
+    private void change(int species, int birthStep, int starveStep, boolean isInfected,
+                        boolean isMale, int delta)
+    {
+        counts[species] += delta;
+        if(isInfected) {
+            infected[species] += delta;
+        }
+        if(isMale) {
+            males[species] += delta;
+        }
+        int[] speciesBirths = births[species];
+        if(step - birthStep >= speciesBirths.length) {
+            elders[species] += delta;
+        }
+        else {
+            speciesBirths[Math.floorMod(birthStep, speciesBirths.length)] += delta;
+        }
+        birthSums[species] += delta * (long) birthStep;
+        birthSquareSums[species] += delta * (long) birthStep * birthStep;
+        if(starveStep != NEVER) {
+            fed[species] += delta;
+            starves[species * BUCKETS + Math.floorMod(starveStep, BUCKETS)] += delta;
+            starveSums[species] += delta * (long) starveStep;
+            starveSquareSums[species] += delta * (long) starveStep * starveStep;
+        }
+    }
+
+    /**
+     * @return The number of living actors of a species.
+     */
+    public int getCount(int species)
+    {
+        return counts[species];
+    }
+
+    /**
+     * @return The number of infected actors of a species.
+     */
+    public int getInfectedCount(int species)
+    {
+        return infected[species];
+    }
+
+    /**
+     * @return The share of the actors of a species that are infected,
+     *         or 0 if there are none.
+     */
+    public double getPrevalence(int species)
+    {
+        return ratio(infected[species], counts[species]);
+    }
+
+    /**
+     * @return The number of male actors of a species.
+     */
+    public int getMaleCount(int species)
+    {
+        return males[species];
+    }
+
+    /**
+     * @return The share of the actors of a species that are male, or 0
+     *         if there are none.
+     */
+    public double getMaleRatio(int species)
+    {
+        return ratio(males[species], counts[species]);
+    }
+
+    /**
+     * @return The number of actors of a species in each bucket of ages.
+     *         Bucket i holds the ages from i * getAgeBucketWidth(species).
+     */
+    public long[] getAgeHistogram(int species)
+    {
+        int[] speciesBirths = births[species];
+        int width = AGE_BUCKET_WIDTHS[species];
+        long[] buckets = new long[BUCKETS];
+        for(int age = 0; age < speciesBirths.length; age++) {
+            buckets[age / width] += speciesBirths[Math.floorMod(step - age, speciesBirths.length)];
+        }
+        buckets[BUCKETS - 1] += elders[species];
+        return buckets;
+    }
+
+    /**
+     * @return The width of the buckets of ages of a species.
+     */
+    public int getAgeBucketWidth(int species)
+    {
+        return AGE_BUCKET_WIDTHS[species];
+    }
+
+    /**
+     * @return The mean age of the actors of a species, or 0 if there are none.
+     */
+    public double getMeanAge(int species)
+    {
+        return counts[species] == 0 ? 0 : step - ratio(birthSums[species], counts[species]);
+    }
+
+    /**
+     * @return The variance of the ages of the actors of a species.
+     */
+    public double getAgeVariance(int species)
+    {
+        return variance(birthSums[species], birthSquareSums[species], counts[species]);
+    }
+
+    /**
+     * @return The number of actors of a species in each bucket of food
+     *         levels. Bucket i holds the food levels from
+     *         i * getFoodBucketWidth(). Actors that do not get hungry
+     *         are not counted.
+     */
+    public long[] getFoodHistogram(int species)
+    {
+        long[] buckets = new long[BUCKETS];
+        for(int food = 0; food < BUCKETS; food++) {
+            buckets[food] = starves[species * BUCKETS + Math.floorMod(step + food, BUCKETS)];
+        }
+        return buckets;
+    }
+
+    /**
+     * @return The width of the buckets of food levels.
+     */
+    public int getFoodBucketWidth()
+    {
+        return FOOD_BUCKET_WIDTH;
+    }
+
+    /**
+     * @return The mean food level of the actors of a species, or 0 if
+     *         there are none or they do not get hungry.
+     */
+    public double getMeanFoodLevel(int species)
+    {
+        return fed[species] == 0 ? 0 : ratio(starveSums[species], fed[species]) - step;
+    }
+
+    /**
+     * @return The variance of the food levels of the actors of a species.
+     */
+    public double getFoodLevelVariance(int species)
+    {
+        return variance(starveSums[species], starveSquareSums[species], fed[species]);
+    }
+
+    /**
+     * Write the names of the columns written by writeRow, as a line of
+     * comma separated values.
+     * @param out Where to write to.
+     */
+    public void writeHeader(PrintWriter out)
+    {
+        out.print("step");
+        for(int species = 0; species < counts.length; species++) {
+            String name = Species.getSpeciesClass(species).getSimpleName();
+            out.print("," + name + " count," + name + " infected," + name + " males,"
+                      + name + " mean age," + name + " age variance,"
+                      + name + " mean food," + name + " food variance");
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                out.print("," + name + " age " + bucket * AGE_BUCKET_WIDTHS[species]);
+            }
+            for(int bucket = 0; bucket < BUCKETS; bucket++) {
+                out.print("," + name + " food " + bucket * FOOD_BUCKET_WIDTH);
+            }
+        }
+        out.println();
+    }
+
+    /**
+     * Write the statistics as a line of comma separated values, with the
+     * columns named by writeHeader.
+     * @param out Where to write to.
+     * @param step The step of the simulation.
+     */
+    public void writeRow(PrintWriter out, int step)
+    {
+        StringBuilder row = new StringBuilder();
+        row.append(step);
+        for(int species = 0; species < counts.length; species++) {
+            row.append(',').append(counts[species])
+               .append(',').append(infected[species])
+               .append(',').append(males[species])
+               .append(',').append(getMeanAge(species))
+               .append(',').append(getAgeVariance(species))
+               .append(',').append(getMeanFoodLevel(species))
+               .append(',').append(getFoodLevelVariance(species));
+            for(long count : getAgeHistogram(species)) {
+                row.append(',').append(count);
+            }
+            for(long count : getFoodHistogram(species)) {
+                row.append(',').append(count);
+            }
+        }
+        out.println(row);
+    }
+
+    /**
+     * @return A quotient, or 0 if the divisor is 0.
+     */
+    private static double ratio(long dividend, long divisor)
+    {
+        return divisor == 0 ? 0 : (double) dividend / divisor;
+    }
+
+    /**
+     * @return The variance of values from their number, sum and sum of squares.
+     */
+    private static double variance(long sum, long squareSum, int count)
+    {
+        if(count == 0) {
+            return 0;
+        }
+        double mean = (double) sum / count;
+        return Math.max((double) squareSum / count - mean * mean, 0);
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -8,6 +11,9 @@ import java.util.List;
  */
 public abstract class Animal
 {
+    // A shared random number generator for eating in act.
+    private static final RandomSource rand = Randomizer.getRandom();
+
     // Whether the animal is alive or not.
     private boolean alive;
     // The animal's field.
@@ -16,6 +22,26 @@ public abstract class Animal
     private Location location;
     // Is the animal infected.
     protected boolean isInfected;
+    // The id of the animal's species in the Species registry.
+    private int speciesId;
+    // The steps since the animal was infected.
+    private int infectionAge;
+    // Whether the animal has recovered from an infection and cannot catch it again.
+    private boolean immune;
+    // The step the animal was born in; its age is the number of steps since.
+    private int birthStep;
+    // The step the animal last ate in and its food level then; the food
+    // level drops by one in every step after.
+    private int fedStep, fedLevel;
+    // The step in which the animal dies of old age or hunger, as put into
+    // the death calendar of its field.
+    private int deathStep;
+    // Whether the animal is recorded in the statistics and the death
+    // calendar of its field, and the birth step, starve step and
+    // infection it is recorded with.
+    private boolean recorded;
+    private int recordedBirth, recordedStarve;
+    private boolean recordedInfected;
 
     /**
      * Create a new animal at location in field.
@@ -26,8 +52,11 @@ public abstract class Animal
     public Animal(Field field, Location location)
     {
         alive = true;
+        speciesId = Species.getId(getClass());
         this.field = field;
         setLocation(location);
+        birthStep = field.getStep();
+        fedStep = birthStep;
         isInfected = false;
     }
 
@@ -40,6 +69,232 @@ public abstract class Animal
      */
     abstract public void act(List<Animal> newAnimals, boolean time, String weather);
 
+    /**
+     * Plan what this animal does in a step of the two-phase update.
+     * Unlike act, this must not change the field or any other actor:
+     * it only reads the field as it was at the start of the step and
+     * records what the animal wants to do in the intent.
+     * @param intent The intent to fill in, with the animal's random generator.
+     * @param time time - day or night.
+     * @param weather Current weather condition.
+     */
+    abstract protected void plan(Intent intent, boolean time, String weather);
+
+    /**
+     * Create a newborn of this animal's species.
+     * @param field The field to place the newborn in.
+     * @param location Where to place the newborn.
+     * @return The newborn.
+     */
+    abstract protected Animal createYoung(Field field, Location location);
+
+    /**
+     * Feed on a prey, once it has been removed from the field. What the
+     * prey is worth, and whether its infection is caught, is looked up in
+     * the Species registry. An infected prey that passes its infection on
+     * does not feed the animal, and may kill it.
+     * @param prey The animal or plant that was eaten.
+     * @param random The animal's random generator.
+     * @return true if the animal moves into the prey's cell.
+     */
+    protected boolean eat(Object prey, RandomSource random)
+    {
+        int preyId = Species.getId(prey);
+        if(Species.catchesInfection(speciesId, preyId) && hasInfection(prey)) {
+            infect();
+            if(random.chance(Species.getInfectionDeathThreshold(speciesId))) {
+                setDead(EventBus.DISEASE);
+            }
+            return false;
+        }
+        feed(Species.getFoodValue(speciesId, preyId));
+        return true;
+    }
+
+    /**
+     * Set the food level after eating.
+     * @param foodValue The food value of the eaten prey.
+     */
+    protected void feed(int foodValue)
+    {
+        setFoodLevel(foodValue);
+    }
+
+    /**
+     * Look for food adjacent to the current location: any neighbour whose
+     * species is in the diet of this animal's species. The prey is eaten
+     * at once. Eating stops at the first prey that feeds the animal;
+     * an infected prey is eaten but the search goes on.
+     * @return Where food was found, or null if it wasn't.
+     */
+    protected Location findFood()
+    {
+        Field field = getField();
+        Location location = getLocation();
+        // Only look at the neighbours that hold food, in random order.
+        int food = field.getNeighbourMask(location, Species.getDiet(speciesId));
+        while(food != 0 && isAlive()) {
+            int bit = Field.randomBit(food);
+            food &= ~(1 << bit);
+            Location where = field.neighbourAt(location, bit);
+            Object prey = field.getObjectAt(where);
+            if(prey != null && ActorCodec.isAlive(prey)) {
+                field.getEvents().predation(speciesId, Species.getId(prey), where);
+                ActorCodec.remove(prey, EventBus.EATEN);
+                if(eat(prey, rand)) {
+                    return where;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The age of the animal, in steps.
+     */
+    protected int getAge()
+    {
+        return field.getStep() - birthStep;
+    }
+
+    /**
+     * Set the age of the animal, e.g. when it is created.
+     * @param age The age, in steps.
+     */
+    protected void setAge(int age)
+    {
+        birthStep = field.getStep() - age;
+    }
+
+    /**
+     * @return The food level of the animal, or -1 if it does not get hungry.
+     */
+    protected int getFoodLevel()
+    {
+        return getsHungry() ? fedLevel - (field.getStep() - fedStep) : -1;
+    }
+
+    /**
+     * Set the food level of the animal, as of the current step.
+     * @param foodLevel The food level.
+     */
+    protected void setFoodLevel(int foodLevel)
+    {
+        fedStep = field.getStep();
+        fedLevel = foodLevel;
+    }
+
+    /**
+     * @return Whether the animal gets hungry, i.e. its species eats.
+     */
+    private boolean getsHungry()
+    {
+        return Species.getDiet(speciesId) != 0;
+    }
+
+    /**
+     * @return The step in which the food level reaches 0, or
+     *         ActorStats.NEVER if the animal does not get hungry.
+     */
+    private int getStarveStep()
+    {
+        return getsHungry() ? fedStep + fedLevel : ActorStats.NEVER;
+    }
+
+    /**
+     * @return The step in which the animal dies of old age or hunger,
+     *         as put into the death calendar of its field.
+     */
+    protected int getDeathStep()
+    {
+        return deathStep;
+    }
+
+    /**
+     * Die of old age or hunger, whichever came first. Called by the
+     * simulation in the animal's death step.
+     */
+    protected void expire()
+    {
+        setDead(getAge() > Species.getMaxAge(speciesId) ? EventBus.AGE : EventBus.HUNGER);
+    }
+
+    /**
+     * Bring the animal's entries in the statistics and the death calendar
+     * of its field up to date with its birth, food level and infection.
+     * Called once the animal has been created or has acted; does nothing
+     * if none of them changed, as the animal merely got older.
+     */
+    protected void updateStats()
+    {
+        if(!alive) {
+            return;
+        }
+        int starveStep = getStarveStep();
+        if(recorded && birthStep == recordedBirth && starveStep == recordedStarve) {
+            if(isInfected != recordedInfected) {
+                recordStats(starveStep);
+            }
+            return;
+        }
+        recordStats(starveStep);
+        // Die when too old, or when the food level reaches 0; but not
+        // before the next step, in which the animal acts again.
+        long oldAge = (long) birthStep + Species.getMaxAge(speciesId) + 1;
+        int step = (int) Math.max(Math.min(oldAge, starveStep), field.getStep() + 1);
+        if(step != deathStep && step != ActorStats.NEVER) {
+            field.getDeathCalendar().schedule(this, step);
+        }
+        deathStep = step;
+    }
+
+    /**
+     * Move the animal's entry in the statistics to its current values.
+     */
+    private void recordStats(int starveStep)
+    {
+        ActorStats stats = field.getStats();
+        boolean isMale = isMale();
+        if(recorded) {
+            stats.remove(speciesId, recordedBirth, recordedStarve, recordedInfected, isMale);
+        }
+        stats.add(speciesId, birthStep, starveStep, isInfected, isMale);
+        recorded = true;
+        recordedBirth = birthStep;
+        recordedStarve = starveStep;
+        recordedInfected = isInfected;
+    }
+
+    /**
+     * @return Whether the animal has a gender and is male.
+     */
+    private boolean isMale()
+    {
+        return this instanceof Gendered && ((Gendered) this).getGender();
+    }
+
+    /**
+     * @return The id of the animal's species in the Species registry.
+     */
+    protected int getSpeciesId()
+    {
+        return speciesId;
+    }
+
+    /**
+     * Write the individual state of this animal (age, food level, ...)
+     * so that an equal animal can be recreated in another field.
+     * @param out Where to write the state to.
+     */
+    abstract protected void writeState(DataOutput out) throws IOException;
+
+    /**
+     * Overwrite the individual state of this animal with one written
+     * by writeState.
+     * @param in Where to read the state from.
+     */
+    abstract protected void readState(DataInput in) throws IOException;
+
     /**
      * Check whether the animal is alive or not.
      * @return true if the animal is still alive.
@@ -54,9 +309,25 @@ public abstract class Animal
      * It is removed from the field.
      */
     protected void setDead()
+    {
+        setDead(EventBus.REMOVED);
+    }
+
+    /**
+     * Indicate that the animal is no longer alive, and why.
+     * It is removed from the field.
+     * @param cause The cause of death, e.g. EventBus.AGE.
+     */
+    protected void setDead(int cause)
     {
         alive = false;
         if(location != null) {
+            field.getEvents().death(speciesId, cause, location);
+            if(recorded) {
+                field.getStats().remove(speciesId, recordedBirth, recordedStarve,
+                                        recordedInfected, isMale());
+                recorded = false;
+            }
             field.clear(location);
             location = null;
             field = null;
@@ -102,4 +373,59 @@ public abstract class Animal
     {
        return isInfected;
     }
+
+    /**
+     * Infect the animal, unless it is immune. The animal incubates the
+     * infection before it becomes infectious (see Epidemic).
+     */
+    protected void infect()
+    {
+        if(!immune) {
+            if(!isInfected && location != null) {
+                field.getEvents().infection(speciesId, location);
+            }
+            isInfected = true;
+            infectionAge = 0;
+        }
+    }
+
+    /**
+     * @return Whether the animal can catch an infection.
+     */
+    protected boolean isSusceptible()
+    {
+        return !isInfected && !immune;
+    }
+
+    /**
+     * Advance the infection of an infected animal by one step. Once it
+     * has been infectious for the recovery steps of its species, it
+     * recovers and is immune.
+     * @return true if the animal is infectious after this step.
+     */
+    protected boolean advanceInfection()
+    {
+        infectionAge++;
+        int incubation = Species.getIncubationSteps(speciesId);
+        int recovery = Species.getRecoverySteps(speciesId);
+        if(recovery > 0 && infectionAge >= incubation + recovery) {
+            isInfected = false;
+            immune = true;
+            return false;
+        }
+        return infectionAge >= incubation;
+    }
+
+    /**
+     * @return Whether an animal or a plant is infected.
+     */
+    private static boolean hasInfection(Object actor)
+    {
+        if(actor instanceof Animal) {
+            return ((Animal) actor).getInfection();
+        }
+        else {
+            return ((Plants) actor).getInfection();
+        }
+    }
 }
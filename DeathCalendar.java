@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The steps in which the animals of a field will die of old age or
+ * hunger, as a calendar queue: one bucket of animals per step, in a ring
+ * of buckets that is reused as the steps go by.
+ *
+ * Animals do not age or get hungry step by step. Each animal knows the
+ * step it was born in and the step it last ate in, so its age and food
+ * level are worked out when they are read, and it is put into the
+ * bucket of the step it will die in (see Animal.getDeathStep). An animal
+ * that eats again is simply put into a later bucket; its old entry is
+ * recognised as out of date and dropped when its bucket comes up. So an
+ * animal costs nothing in the steps it does not act, and the deaths of a
+ * step are taken out of the calendar all at once.
+ *
+ * Deaths further ahead than the ring reaches share a bucket with an
+ * earlier step, and are kept in it until their own step comes.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class DeathCalendar
+{
+    // The number of buckets, a power of two above the longest life span,
+    // so that almost every death lands in its own step's bucket.
+    private static final int BUCKETS = 256;
+
+    // The animals dying in each step, at step & (BUCKETS - 1), with
+    // entries that are out of date.
+    private List<List<Animal>> buckets;
+
+    /**
+     * Create an empty calendar.
+     */
+    public DeathCalendar()
+    {
+        buckets = new ArrayList<>(BUCKETS);
+        for(int i = 0; i < BUCKETS; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Forget all animals.
+     */
+    public void clear()
+    {
+        for(List<Animal> bucket : buckets) {
+            bucket.clear();
+        }
+    }
+
+    /**
+     * Put an animal into the bucket of the step it will die in.
+     * @param animal The animal.
+     * @param step Its death step, after the current step.
+     */
+    public void schedule(Animal animal, int step)
+    {
+        buckets.get(step & (BUCKETS - 1)).add(animal);
+    }
+
+    /**
+     * Take the animals that die in a step out of the calendar.
+     * @param step The step, which must be the current step of the field.
+     * @return The living animals whose death step it is. An animal that
+     *         was put into the bucket more than once may be listed twice.
+     */
+    public List<Animal> takeDue(int step)
+    {
+        List<Animal> bucket = buckets.get(step & (BUCKETS - 1));
+        List<Animal> due = new ArrayList<>();
+        // Keep the animals that die in a later round of the ring.
+        int kept = 0;
+        for(Animal animal : bucket) {
+            if(!animal.isAlive()) {
+                continue;
+            }
+            int deathStep = animal.getDeathStep();
+            if(deathStep == step) {
+                due.add(animal);
+            }
+            else if(deathStep > step && ((deathStep - step) & (BUCKETS - 1)) == 0) {
+                bucket.set(kept++, animal);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+        return due;
+    }
+}
@@ -0,0 +1,94 @@
+import java.util.Arrays;
+
+/**
+ * Keeps a summed-area table of every species in a field, so that the
+ * number of individuals of a species in any rectangle of the field can
+ * be found with four array reads, whatever the size of the rectangle.
+ *
+ * The tables are not kept up to date as actors are placed in the field,
+ * but rebuilt once per step by calling rebuild. In a field of several
+ * layers, the layers are counted together.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class DensityMap
+{
+    // The depth and width of the field.
+    private int depth, width;
+    // One table per species id. Entry (row, col) of a table holds the
+    // number of individuals above and to the left of that cell, so the
+    // tables have one extra row and column.
+    private int[][] sums;
+
+    /**
+     * Create empty tables for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public DensityMap(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        sums = new int[Species.getCount()][(depth + 1) * (width + 1)];
+    }
+
+    /**
+     * Rebuild the tables from the current contents of the field.
+     * @param field The field, of the same size as the tables.
+     */
+    public void rebuild(Field field)
+    {
+        int stride = width + 1;
+        int[] rowCounts = new int[sums.length];
+        for(int row = 0; row < depth; row++) {
+            Arrays.fill(rowCounts, 0);
+            int above = row * stride;
+            int here = above + stride;
+            for(int col = 0; col < width; col++) {
+                // Count the cell in all layers.
+                for(int layer = 0; layer < field.getLayers(); layer++) {
+                    int id = field.getSpeciesAt(row, col, layer);
+                    if(id >= 0) {
+                        rowCounts[id]++;
+                    }
+                }
+                for(int id = 0; id < sums.length; id++) {
+                    sums[id][here + col + 1] = sums[id][above + col + 1] + rowCounts[id];
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the individuals of some species in a rectangle of the field.
+     * The rectangle is clipped to the field.
+     * @param species The species to count, as a bitmask of Species ids.
+     * @param top The first row of the rectangle.
+     * @param left The first column of the rectangle.
+     * @param bottom The last row of the rectangle.
+     * @param right The last column of the rectangle.
+     * @return The number of individuals in the rectangle.
+     */
+    public int count(int species, int top, int left, int bottom, int right)
+    {
+        top = Math.max(top, 0);
+        left = Math.max(left, 0);
+        bottom = Math.min(bottom, depth - 1);
+        right = Math.min(right, width - 1);
+        if(top > bottom || left > right) {
+            return 0;
+        }
+        int stride = width + 1;
+        int count = 0;
+        while(species != 0) {
+            int[] table = sums[Integer.numberOfTrailingZeros(species)];
+            species &= species - 1;
+            count += table[(bottom + 1) * stride + right + 1]
+                     - table[top * stride + right + 1]
+                     - table[(bottom + 1) * stride + left]
+                     + table[top * stride + left];
+        }
+        return count;
+    }
+}
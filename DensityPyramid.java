@@ -0,0 +1,212 @@
+import java.util.Arrays;
+
+/**
+ * Counts the individuals of every species in square blocks of a field,
+ * at several scales: blocks of 8x8, 64x64 and 512x512 cells, aligned to
+ * the top left corner of the field. Blocks at the bottom and right edges
+ * may be cut off by the edge of the field.
+ *
+ * Unlike the DensityMap, the counts are kept up to date by the field as
+ * actors are placed and cleared, at a cost of one update per level. So
+ * the count of any block can be read at any time, without looking at
+ * the cells of the field. Views and analysis code use them to sample the
+ * field at a coarser scale. In a field of several layers, the layers
+ * are counted together.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class DensityPyramid
+{
+    // The base 2 logarithm of the side of the blocks of each level.
+    private static final int[] SHIFTS = { 3, 6, 9 };
+
+    // The depth and width of the field.
+    private int depth, width;
+    // The number of species counted per block.
+    private int species;
+    // The number of blocks down and across the field, per level.
+    private int[] blocksDown, blocksAcross;
+    // The counts of each level, at (blockRow * blocksAcross + blockCol) * species + id.
+    private int[][] counts;
+
+    /**
+     * Create empty counts for a field of the given size.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     */
+    public DensityPyramid(int depth, int width)
+    {
+        this.depth = depth;
+        this.width = width;
+        species = Species.getCount();
+        blocksDown = new int[SHIFTS.length];
+        blocksAcross = new int[SHIFTS.length];
+        counts = new int[SHIFTS.length][];
+        for(int level = 0; level < SHIFTS.length; level++) {
+            int size = 1 << SHIFTS[level];
+            blocksDown[level] = (depth + size - 1) / size;
+            blocksAcross[level] = (width + size - 1) / size;
+            counts[level] = new int[blocksDown[level] * blocksAcross[level] * species];
+        }
+    }
+
+    /**
+     * Set all counts to zero.
+     */
+    public void clear()
+    {
+        for(int[] level : counts) {
+            Arrays.fill(level, 0);
+        }
+    }
+
+    /**
+     * Copy the counts of another pyramid of the same size, e.g. to keep a
+     * snapshot that another thread can read while the field changes.
+     * @param other The pyramid to copy.
+     */
+    public void copyFrom(DensityPyramid other)
+    {
+        for(int level = 0; level < counts.length; level++) {
+            System.arraycopy(other.counts[level], 0, counts[level], 0, counts[level].length);
+        }
+    }
+
+    /**
+     * Recount all blocks from the current contents of the field.
+     * @param field The field, of the same size as the pyramid.
+     */
+    public void rebuild(Field field)
+    {
+        clear();
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                // Count the cell in all layers.
+                for(int layer = 0; layer < field.getLayers(); layer++) {
+                    int id = field.getSpeciesAt(row, col, layer);
+                    if(id >= 0) {
+                        add(id, row, col, 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add to the count of a species in the blocks of a cell, at every level.
+     * @param id The species.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param delta 1 when an individual is placed, -1 when it is cleared.
+     */
+    public void add(int id, int row, int col, int delta)
+    {
+        for(int level = 0; level < SHIFTS.length; level++) {
+            int shift = SHIFTS[level];
+            int block = (row >> shift) * blocksAcross[level] + (col >> shift);
+            counts[level][block * species + id] += delta;
+        }
+    }
+
+    /**
+     * @return The number of levels.
+     */
+    public int getLevels()
+    {
+        return SHIFTS.length;
+    }
+
+    /**
+     * @return The side of the blocks of a level, in cells.
+     */
+    public int getBlockSize(int level)
+    {
+        return 1 << SHIFTS[level];
+    }
+
+    /**
+     * @return The level with blocks of the given side, or -1 if there is none.
+     */
+    public int getLevel(int blockSize)
+    {
+        for(int level = 0; level < SHIFTS.length; level++) {
+            if(blockSize == 1 << SHIFTS[level]) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of rows of blocks of a level.
+     */
+    public int getBlocksDown(int level)
+    {
+        return blocksDown[level];
+    }
+
+    /**
+     * @return The number of columns of blocks of a level.
+     */
+    public int getBlocksAcross(int level)
+    {
+        return blocksAcross[level];
+    }
+
+    /**
+     * Count the individuals of some species in a block.
+     * @param level The level of the block.
+     * @param blockRow The row of the block, in blocks of that level.
+     * @param blockCol The column of the block, in blocks of that level.
+     * @param speciesMask The species to count, as a bitmask of Species ids.
+     * @return The number of individuals in the block.
+     */
+    public int count(int level, int blockRow, int blockCol, int speciesMask)
+    {
+        int base = (blockRow * blocksAcross[level] + blockCol) * species;
+        int[] levelCounts = counts[level];
+        int count = 0;
+        while(speciesMask != 0) {
+            count += levelCounts[base + Integer.numberOfTrailingZeros(speciesMask)];
+            speciesMask &= speciesMask - 1;
+        }
+        return count;
+    }
+
+    /**
+     * Count the individuals of one species in a block.
+     * @param level The level of the block.
+     * @param blockRow The row of the block, in blocks of that level.
+     * @param blockCol The column of the block, in blocks of that level.
+     * @param id The species.
+     * @return The number of individuals in the block.
+     */
+    public int getCount(int level, int blockRow, int blockCol, int id)
+    {
+        return counts[level][(blockRow * blocksAcross[level] + blockCol) * species + id];
+    }
+
+    /**
+     * Find the species with the most individuals in a block.
+     * @param level The level of the block.
+     * @param blockRow The row of the block, in blocks of that level.
+     * @param blockCol The column of the block, in blocks of that level.
+     * @return The id of the species, the lowest one on a tie, or -1 if
+     *         the block is empty.
+     */
+    public int getDominantSpecies(int level, int blockRow, int blockCol)
+    {
+        int base = (blockRow * blocksAcross[level] + blockCol) * species;
+        int[] levelCounts = counts[level];
+        int dominant = -1;
+        int most = 0;
+        for(int id = 0; id < species; id++) {
+            if(levelCounts[base + id] > most) {
+                dominant = id;
+                most = levelCounts[base + id];
+            }
+        }
+        return dominant;
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+/**
+ * The time of day and the weather of every step of a run, worked out in
+ * advance from a seed by the rules of Time and Weather.
+ *
+ * The conditions are stored as segments: the first step of each run of
+ * steps with the same time of day and weather, and those conditions.
+ * The conditions of a step are found by a binary search of the segments,
+ * so any step can be looked up directly, without stepping through the
+ * steps before it. Steps beyond the end of the timeline wrap around to
+ * its start.
+ *
+ * A timeline never changes once made, so several simulations (e.g. the
+ * runs of a parameter sweep) can share one, also across threads, and
+ * all see the same weather.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class EnvironmentTimeline
+{
+    // The number of steps in the timeline.
+    private final int length;
+    // The first step of each segment, in ascending order from 0.
+    private final int[] starts;
+    // The conditions of each segment: the index of the weather in
+    // Weather.KINDS, shifted left by one, and 1 if it is day.
+    private final byte[] conditions;
+
+    /**
+     * Work out the conditions of a number of steps.
+     * @param seed The seed of the weather.
+     * @param length The number of steps, from step 0 (the state after a
+     *               reset) on. Must be positive.
+     */
+    public EnvironmentTimeline(long seed, int length)
+    {
+        if(length < 1) {
+            throw new IllegalArgumentException("Length must be positive: " + length);
+        }
+        this.length = length;
+        Time time = new Time(true);
+        Weather weather = new Weather(new RandomSource(seed));
+        int[] segmentStarts = new int[16];
+        byte[] segmentConditions = new byte[16];
+        int count = 0;
+        for(int step = 0; step < length; step++) {
+            if(step > 0) {
+                time.timeCheck();
+                weather.weatherCheck();
+            }
+            byte condition = (byte) (Weather.indexOf(weather.getCurrentWeather()) << 1
+                                     | (time.getIsDay() ? 1 : 0));
+            if(count == 0 || segmentConditions[count - 1] != condition) {
+                if(count == segmentStarts.length) {
+                    segmentStarts = Arrays.copyOf(segmentStarts, 2 * count);
+                    segmentConditions = Arrays.copyOf(segmentConditions, 2 * count);
+                }
+                segmentStarts[count] = step;
+                segmentConditions[count] = condition;
+                count++;
+            }
+        }
+        starts = Arrays.copyOf(segmentStarts, count);
+        conditions = Arrays.copyOf(segmentConditions, count);
+    }
+
+    /**
+     * @return The number of steps in the timeline.
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return The number of runs of steps with the same conditions.
+     */
+    public int getSegmentCount()
+    {
+        return starts.length;
+    }
+
+    /**
+     * @param step The step.
+     * @return Whether it is day in the step.
+     */
+    public boolean isDay(int step)
+    {
+        return (conditions[segment(step)] & 1) != 0;
+    }
+
+    /**
+     * @param step The step.
+     * @return The weather in the step: "sunny", "stormy" or "freezing".
+     */
+    public String getWeather(int step)
+    {
+        return Weather.KINDS[conditions[segment(step)] >> 1];
+    }
+
+    /**
+     * @return The segment of a step.
+     */
+    private int segment(int step)
+    {
+        if(step < 0) {
+            throw new IndexOutOfBoundsException("Negative step: " + step);
+        }
+        int index = Arrays.binarySearch(starts, step % length);
+        // Between two starts: the segment of the start before.
+        return index >= 0 ? index : -index - 2;
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spreads the infection by contact between neighbouring animals, once per
+ * step. The rules of each species (how likely the infection passes on,
+ * incubation and recovery) are in the Species registry.
+ *
+ * A step works on bitboards of the field, one bit per cell in row order,
+ * layer by layer:
+ *
+ *  - The infection of every infected animal advances by one step, and the
+ *    animals that are infectious are set in the infectious board. Animals
+ *    that can catch the infection are set in the susceptible board.
+ *  - The infectious board is dilated to the 3x3 neighbourhood of every
+ *    infectious cell, or the 3x3x3 one in a field of several layers,
+ *    with word-wide shifts and masks rather than a scan of the
+ *    neighbours of each animal.
+ *  - Only the susceptible animals inside the dilated board are visited.
+ *    Each catches the infection with a chance that depends on the number
+ *    of its infectious neighbours.
+ *
+ * Animals infected in a step first incubate the infection, so an outbreak
+ * spreads at most one cell per step.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class Epidemic
+{
+    // A shared random number generator for passing on the infection.
+    private static final RandomSource rand = Randomizer.getRandom();
+
+    // The depth, width and layers of the field the boards are made for.
+    private int depth, width, layers;
+    // The infectious and the susceptible animals.
+    private long[] infectious, susceptible;
+    // The infectious animals dilated along the rows, then along the columns.
+    private long[] rows, exposed;
+    // A board for shifted copies.
+    private long[] scratch;
+    // All cells but those of the first column, and all but those of the last.
+    private long[] notFirstColumn, notLastColumn;
+    // In a field of several layers: all cells but those of the first row
+    // of a layer, all but those of the last, and the infectious animals
+    // dilated along the rows and columns. Else null.
+    private long[] notFirstRow, notLastRow, planes;
+
+    /**
+     * Run the epidemic for one step.
+     * @param field The field of the animals.
+     * @param animals The animals in the field.
+     */
+    public void step(Field field, List<Animal> animals)
+    {
+        prepare(field);
+
+        for(Animal animal : animals) {
+            Location location = animal.getLocation();
+            if(!animal.isAlive() || field.getObjectAt(location) != animal) {
+                // Dead, or its cell was taken over by another actor.
+                continue;
+            }
+            int cell = (location.getLayer() * depth + location.getRow()) * width
+                       + location.getCol();
+            if(animal.getInfection()) {
+                if(animal.advanceInfection()) {
+                    infectious[cell >>> 6] |= 1L << cell;
+                }
+                // It may have recovered.
+                animal.updateStats();
+            }
+            else if(animal.isSusceptible() && Species.spreadsByContact(animal.getSpeciesId())) {
+                susceptible[cell >>> 6] |= 1L << cell;
+            }
+        }
+
+        // Dilate along the rows: a cell is exposed by its left and right
+        // neighbours, but not across the edge of a row.
+        System.arraycopy(infectious, 0, rows, 0, rows.length);
+        shift(infectious, 1, scratch);
+        orMasked(rows, scratch, notFirstColumn);
+        shift(infectious, -1, scratch);
+        orMasked(rows, scratch, notLastColumn);
+        // Then along the columns, but not across the edge of a layer.
+        System.arraycopy(rows, 0, exposed, 0, exposed.length);
+        shift(rows, width, scratch);
+        orMasked(exposed, scratch, notFirstRow);
+        shift(rows, -width, scratch);
+        orMasked(exposed, scratch, notLastRow);
+        if(layers > 1) {
+            // Then to the layers above and below.
+            System.arraycopy(exposed, 0, planes, 0, planes.length);
+            shift(planes, depth * width, scratch);
+            orMasked(exposed, scratch, null);
+            shift(planes, -depth * width, scratch);
+            orMasked(exposed, scratch, null);
+        }
+
+        for(int word = 0; word < exposed.length; word++) {
+            long candidates = exposed[word] & susceptible[word];
+            while(candidates != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                int row = cell / width % depth;
+                int col = cell % width;
+                int layer = cell / width / depth;
+                Animal animal = (Animal) field.getObjectAt(row, col, layer);
+                int contacts = countInfectious(row, col, layer);
+                if(rand.chance(Species.getContactThreshold(animal.getSpeciesId(), contacts))) {
+                    animal.infect();
+                    animal.updateStats();
+                }
+            }
+        }
+    }
+
+    /**
+     * Make sure the boards fit the field and are empty.
+     */
+    private void prepare(Field field)
+    {
+        if(infectious == null || depth != field.getDepth() || width != field.getWidth()
+               || layers != field.getLayers()) {
+            depth = field.getDepth();
+            width = field.getWidth();
+            layers = field.getLayers();
+            int cells = layers * depth * width;
+            int words = (cells + 63) / 64;
+            infectious = new long[words];
+            susceptible = new long[words];
+            rows = new long[words];
+            exposed = new long[words];
+            scratch = new long[words];
+            notFirstColumn = new long[words];
+            notLastColumn = new long[words];
+            for(int cell = 0; cell < cells; cell++) {
+                if(cell % width != 0) {
+                    notFirstColumn[cell >>> 6] |= 1L << cell;
+                }
+                if(cell % width != width - 1) {
+                    notLastColumn[cell >>> 6] |= 1L << cell;
+                }
+            }
+            notFirstRow = null;
+            notLastRow = null;
+            planes = null;
+            if(layers > 1) {
+                notFirstRow = new long[words];
+                notLastRow = new long[words];
+                planes = new long[words];
+                for(int cell = 0; cell < cells; cell++) {
+                    int row = cell / width % depth;
+                    if(row != 0) {
+                        notFirstRow[cell >>> 6] |= 1L << cell;
+                    }
+                    if(row != depth - 1) {
+                        notLastRow[cell >>> 6] |= 1L << cell;
+                    }
+                }
+            }
+        }
+        else {
+            Arrays.fill(infectious, 0);
+            Arrays.fill(susceptible, 0);
+        }
+    }
+
+    /**
+     * Count the infectious neighbours of a cell.
+     */
+    private int countInfectious(int row, int col, int layer)
+    {
+        int count = 0;
+        for(int l = Math.max(layer - 1, 0); l <= Math.min(layer + 1, layers - 1); l++) {
+            for(int r = Math.max(row - 1, 0); r <= Math.min(row + 1, depth - 1); r++) {
+                for(int c = Math.max(col - 1, 0); c <= Math.min(col + 1, width - 1); c++) {
+                    int cell = (l * depth + r) * width + c;
+                    if((l != layer || r != row || c != col)
+                           && (infectious[cell >>> 6] & (1L << cell)) != 0) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Shift a board by a number of cells: cell i of the source becomes
+     * cell i + distance of the destination. Cells shifted off either end
+     * are lost and the cells shifted in are empty.
+     * @param source The board to shift.
+     * @param distance The number of cells, negative to shift backwards.
+     * @param destination The board to write the result to.
+     */
+    private void shift(long[] source, int distance, long[] destination)
+    {
+        int words = source.length;
+        int wordShift = Math.abs(distance) >>> 6;
+        int bitShift = Math.abs(distance) & 63;
+        for(int word = 0; word < words; word++) {
+            long value;
+            if(distance >= 0) {
+                int from = word - wordShift;
+                value = from >= 0 ? source[from] << bitShift : 0;
+                if(bitShift != 0 && from - 1 >= 0) {
+                    value |= source[from - 1] >>> (64 - bitShift);
+                }
+            }
+            else {
+                int from = word + wordShift;
+                value = from < words ? source[from] >>> bitShift : 0;
+                if(bitShift != 0 && from + 1 < words) {
+                    value |= source[from + 1] << (64 - bitShift);
+                }
+            }
+            destination[word] = value;
+        }
+        // Drop the cells shifted past the end of the field.
+        int tail = (layers * depth * width) & 63;
+        if(tail != 0) {
+            destination[words - 1] &= (1L << tail) - 1;
+        }
+    }
+
+    /**
+     * Add the cells of a board to another, optionally through a mask.
+     * @param target The board to add to.
+     * @param board The cells to add.
+     * @param mask The cells that may be added, or null for all.
+     */
+    private static void orMasked(long[] target, long[] board, long[] mask)
+    {
+        for(int word = 0; word < target.length; word++) {
+            target[word] |= mask == null ? board[word] : board[word] & mask[word];
+        }
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A stream of the events of a simulation: births, deaths and their
+ * causes, predation, infections and changes of the weather.
+ *
+ * Events are encoded as two longs each and written into a ring buffer
+ * that is allocated once. Readers subscribe to the stream and poll for
+ * new events whenever they like, e.g. from another thread; publishing
+ * never waits for them. A reader that falls more than a buffer behind
+ * skips the events that were overwritten and counts them as lost.
+ *
+ * When nobody subscribes, publishing an event is a single test.
+ *
+ * Each event has a type, a species (a Species id, or -1), a detail whose
+ * meaning depends on the type, the step it happened in and a row and
+ * column of the field:
+ *
+ *  - BIRTH: the species and location of the newborn; the detail is -1.
+ *  - DEATH: the species and location of the dead actor; the detail is
+ *    the cause: AGE, HUNGER, OVERCROWDING, DISEASE, EATEN or REMOVED.
+ *  - PREDATION: the species of the eater, the detail is the species of
+ *    the prey, and the location is that of the prey.
+ *  - INFECTION: the species and location of the newly infected animal.
+ *  - WEATHER: the detail is the new weather (SUNNY, STORMY or FREEZING);
+ *    the species, row and column are -1.
+ *
+ * Events record no layer. In a field of several layers the events of
+ * all layers are published, each with only the row and column of its
+ * location, so events in different layers can have the same position.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class EventBus
+{
+    // The types of events.
+    public static final int BIRTH = 0;
+    public static final int DEATH = 1;
+    public static final int PREDATION = 2;
+    public static final int INFECTION = 3;
+    public static final int WEATHER = 4;
+
+    // The causes of death.
+    public static final int AGE = 0;
+    public static final int HUNGER = 1;
+    public static final int OVERCROWDING = 2;
+    public static final int DISEASE = 3;
+    public static final int EATEN = 4;
+    public static final int REMOVED = 5;
+
+    // The kinds of weather.
+    public static final int SUNNY = 0;
+    public static final int STORMY = 1;
+    public static final int FREEZING = 2;
+
+    // The number of events the buffer holds, by default.
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+
+    // The two longs of each event, at 2 * (sequence & mask).
+    private final long[] slots;
+    // The sequence number of the event in each slot, or -1 while it is
+    // being written.
+    private final AtomicLongArray published;
+    // The number of events the buffer holds, minus one.
+    private final long mask;
+    // The sequence number of the next event.
+    private final AtomicLong next;
+    // The subscribed readers.
+    private final CopyOnWriteArrayList<Reader> readers;
+    // The number of subscribed readers.
+    private volatile int subscribers;
+    // The step of the events being published.
+    private int step;
+
+    /**
+     * Create a bus with the default capacity.
+     */
+    public EventBus()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a bus.
+     * @param capacity The number of events the buffer holds. Must be a
+     *                 power of two.
+     */
+    public EventBus(int capacity)
+    {
+        if(Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a power of two: " + capacity);
+        }
+        slots = new long[2 * capacity];
+        published = new AtomicLongArray(capacity);
+        for(int slot = 0; slot < capacity; slot++) {
+            published.set(slot, -1 - slot);
+        }
+        mask = capacity - 1;
+        next = new AtomicLong();
+        readers = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Start reading the events published from now on.
+     * @return The reader.
+     */
+    public Reader subscribe()
+    {
+        Reader reader = new Reader(next.get());
+        readers.add(reader);
+        subscribers = readers.size();
+        return reader;
+    }
+
+    /**
+     * Stop a reader. Events are no longer published once the last one
+     * has stopped.
+     * @param reader The reader.
+     */
+    public void unsubscribe(Reader reader)
+    {
+        readers.remove(reader);
+        subscribers = readers.size();
+    }
+
+    /**
+     * @return Whether anybody reads the events.
+     */
+    public boolean hasSubscribers()
+    {
+        return subscribers > 0;
+    }
+
+    /**
+     * Set the step of the events published from now on.
+     * @param step The step of the simulation.
+     */
+    public void setStep(int step)
+    {
+        this.step = step;
+    }
+
+    /**
+     * Publish the birth of an actor.
+     * @param species The species of the newborn.
+     * @param location Where it was born.
+     */
+    public void birth(int species, Location location)
+    {
+        if(subscribers > 0) {
+            publish(BIRTH, species, -1, location.getRow(), location.getCol());
+        }
+    }
+
+    /**
+     * Publish the death of an actor.
+     * @param species The species of the actor.
+     * @param cause The cause of death, e.g. AGE.
+     * @param location Where it died.
+     */
+    public void death(int species, int cause, Location location)
+    {
+        if(subscribers > 0) {
+            publish(DEATH, species, cause, location.getRow(), location.getCol());
+        }
+    }
+
+    /**
+     * Publish that an animal ate another animal or a plant.
+     * @param eater The species of the eater.
+     * @param prey The species of the prey.
+     * @param location Where the prey was.
+     */
+    public void predation(int eater, int prey, Location location)
+    {
+        if(subscribers > 0) {
+            publish(PREDATION, eater, prey, location.getRow(), location.getCol());
+        }
+    }
+
+    /**
+     * Publish that an animal caught the infection.
+     * @param species The species of the animal.
+     * @param location Where the animal is.
+     */
+    public void infection(int species, Location location)
+    {
+        if(subscribers > 0) {
+            publish(INFECTION, species, -1, location.getRow(), location.getCol());
+        }
+    }
+
+    /**
+     * Publish a change of the weather.
+     * @param weather The new weather: "sunny", "stormy" or "freezing".
+     */
+    public void weatherChange(String weather)
+    {
+        if(subscribers > 0) {
+            int kind = "freezing".equals(weather) ? FREEZING
+                       : "stormy".equals(weather) ? STORMY : SUNNY;
+            publish(WEATHER, -1, kind, -1, -1);
+        }
+    }
+
+    /**
+     * Write an event into the next slot of the buffer.
+     */
+    private void publish(int type, int species, int detail, int row, int col)
+    {
+        long sequence = next.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        // Readers of the old event in the slot see that it is being replaced.
+        // The fence keeps the writes of the new event below after this
+        // one: a volatile write does not order the plain writes after it.
+        published.set(slot, -1);
+        VarHandle.storeStoreFence();
+        slots[2 * slot] = (type & 0xFF) | (species & 0xFF) << 8 | (detail & 0xFF) << 16
+                          | (long) step << 32;
+        slots[2 * slot + 1] = (long) row << 32 | (col & 0xFFFFFFFFL);
+        published.setRelease(slot, sequence);
+    }
+
+    /**
+     * Receives the events of a reader, decoded.
+     */
+    public interface Handler
+    {
+        /**
+         * Handle one event.
+         * @param type The type of the event, e.g. BIRTH.
+         * @param species The species involved, or -1.
+         * @param detail The detail of the event (see EventBus), or -1.
+         * @param step The step the event happened in.
+         * @param row The row of the event, or -1.
+         * @param col The column of the event, or -1.
+         */
+        void onEvent(int type, int species, int detail, int step, int row, int col);
+    }
+
+    /**
+     * Reads the events of a bus in the order they were published. A
+     * reader may be polled by several threads at once; each event is
+     * then handled by one of them.
+     */
+    public class Reader
+    {
+        // The sequence number of the next event to read.
+        private final AtomicLong cursor;
+        // The number of events overwritten before they were read.
+        private final AtomicLong lost;
+
+        private Reader(long start)
+        {
+            cursor = new AtomicLong(start);
+            lost = new AtomicLong();
+        }
+
+        /**
+         * Handle the events published since the last poll.
+         * @param handler Receives the events.
+         * @return The number of events handled.
+         */
+        public int poll(Handler handler)
+        {
+            int handled = 0;
+            while(true) {
+                long sequence = cursor.get();
+                int slot = (int) (sequence & mask);
+                long found = published.getAcquire(slot);
+                if(found < sequence) {
+                    // Not published yet, or being written.
+                    return handled;
+                }
+                if(found > sequence) {
+                    // Overwritten: skip to the oldest event still there.
+                    skip(sequence, found - mask);
+                    continue;
+                }
+                long first = slots[2 * slot];
+                long second = slots[2 * slot + 1];
+                VarHandle.loadLoadFence();
+                if(published.get(slot) != sequence) {
+                    // Overwritten while being read.
+                    continue;
+                }
+                if(cursor.compareAndSet(sequence, sequence + 1)) {
+                    handler.onEvent((int) first & 0xFF, (byte) (first >> 8), (byte) (first >> 16),
+                                    (int) (first >>> 32), (int) (second >> 32), (int) second);
+                    handled++;
+                }
+            }
+        }
+
+        /**
+         * Move the cursor past overwritten events.
+         */
+        private void skip(long from, long to)
+        {
+            if(cursor.compareAndSet(from, to)) {
+                lost.addAndGet(to - from);
+            }
+        }
+
+        /**
+         * @return The number of events that were overwritten before this
+         *         reader could read them.
+         */
+        public long getLost()
+        {
+            return lost.get();
+        }
+    }
+}
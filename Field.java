@@ -1,3 +1,5 @@
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -8,6 +10,23 @@ import java.util.Random;
  * Represent a rectangular grid of field positions.
  * Each position is able to store a single animal or a plant.
  *
+ * The actors are stored in one array, either row by row or in tiles of
+ * 8x8 cells, each tile row by row. In tiles, a cell and its neighbours
+ * are mostly in the same tile, a few cache lines of the array, instead
+ * of in three rows far apart. Large fields, whose array does not fit in
+ * the cache, are stored in tiles. The layout makes no difference to the
+ * methods of the field.
+ *
+ * A field may have several layers, one under the other, to model the
+ * depth of the ocean: layer 0 is the surface. A cell then has 26
+ * neighbours: 8 in its own layer and 9 in each of the layers above and
+ * below. The bits of a neighbour mask are numbered so that the 8 of the
+ * cell's own layer come first, in the same order as in a flat field, so
+ * a flat field is a field of one layer and behaves exactly as before.
+ * The methods that take a row and a column without a layer refer to the
+ * surface. Actors moving to a free cell keep to the depths their species
+ * prefers where they can (see Species.getLayerDistance).
+ *
  * @author Daniel Koch and Jakub Grzelak
  * @version 2020.02.23
  */
@@ -15,33 +34,239 @@ public class Field
 {
     // A random number generator for providing random locations.
     private static final Random rand = Randomizer.getRandom();
-    // The depth and width of the field.
-    private int depth, width;
-    // Storage for the animals and plants.
-    private Object[][] field;
+    // The base 2 logarithm of the side of a tile.
+    private static final int TILE_SHIFT = 3;
+    // The number of cells above which a field is stored in tiles: about
+    // as many references as fit in a core's cache.
+    private static final int TILED_CELLS = 1 << 16;
+
+    // The depth, width and number of layers of the field.
+    private int depth, width, layers;
+    // Storage for the animals and plants, at cellIndex(row, col, layer).
+    private Object[] cells;
+    // The number of entries of cells for each layer.
+    private int layerCells;
+    // Whether the cells are stored in tiles, and the number of tiles
+    // across the field.
+    private boolean tiled;
+    private int tilesAcross;
+    // Species counts for long-range perception, rebuilt once per step,
+    // over all layers.
+    private DensityMap density;
+    // Occupancy bitboards, one bit per cell in row order, layer by layer:
+    // one board per species id, one for any actor and one for male animals.
+    private long[][] speciesBoards;
+    private long[] occupied;
+    private long[] males;
+    // Species counts in blocks of several sizes over all layers, kept up
+    // to date as actors are placed and cleared.
+    private DensityPyramid pyramid;
+    // Whether the pyramid is being kept up to date (see beginBulkUpdate).
+    private boolean pyramidValid;
+    // Statistics of the state of the living actors (see ActorStats).
+    private ActorStats stats;
+    // The events of the actors in the field.
+    private EventBus events;
+    // The current step of the simulation, from which the actors work out
+    // their age and food level.
+    private int step;
+    // The steps in which the animals die of old age or hunger.
+    private DeathCalendar deaths;
+    // The weather of the regions of the field, or null if the weather is
+    // the same everywhere.
+    private WeatherMap weatherMap;
+
+    // The offsets of the 26 neighbours of a cell, in the order of the bits
+    // of a neighbour mask. First the 8 of the cell's layer: the row above,
+    // the two sides, the row below. Then the 9 of the layer above and the
+    // 9 of the layer below, row by row.
+    private static final int[] ROW_OFFSETS = {
+        -1, -1, -1, 0, 0, 1, 1, 1,
+        -1, -1, -1, 0, 0, 0, 1, 1, 1,
+        -1, -1, -1, 0, 0, 0, 1, 1, 1
+    };
+    private static final int[] COL_OFFSETS = {
+        -1, 0, 1, -1, 1, -1, 0, 1,
+        -1, 0, 1, -1, 0, 1, -1, 0, 1,
+        -1, 0, 1, -1, 0, 1, -1, 0, 1
+    };
+    private static final int[] LAYER_OFFSETS = {
+        0, 0, 0, 0, 0, 0, 0, 0,
+        -1, -1, -1, -1, -1, -1, -1, -1, -1,
+        1, 1, 1, 1, 1, 1, 1, 1, 1
+    };
+    // The neighbour mask bits of the cell's own layer, and of the layers
+    // above and below.
+    private static final int SAME_LAYER = 0xFF;
+    private static final int LAYER_ABOVE = 0x1FF << 8;
+    private static final int LAYER_BELOW = 0x1FF << 17;
 
     /**
-     * Represent a field of the given dimensions.
+     * Represent a field of the given dimensions, stored in tiles if it
+     * is large.
      * @param depth The depth of the field.
      * @param width The width of the field.
      */
     public Field(int depth, int width)
     {
+        this(depth, width, 1);
+    }
+
+    /**
+     * Represent a field of the given dimensions, stored in tiles if it
+     * is large.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param layers The number of layers of the field, 1 for a flat field.
+     */
+    public Field(int depth, int width, int layers)
+    {
+        this(depth, width, layers, (long) depth * width > TILED_CELLS);
+    }
+
+    /**
+     * Represent a flat field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param tiled Whether to store the actors in tiles of 8x8 cells
+     *              rather than row by row.
+     */
+    public Field(int depth, int width, boolean tiled)
+    {
+        this(depth, width, 1, tiled);
+    }
+
+    /**
+     * Represent a field of the given dimensions.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param layers The number of layers of the field, 1 for a flat field.
+     * @param tiled Whether to store the actors of each layer in tiles of
+     *              8x8 cells rather than row by row.
+     */
+    public Field(int depth, int width, int layers, boolean tiled)
+    {
+        if(layers < 1) {
+            throw new IllegalArgumentException("A field needs a layer: " + layers);
+        }
         this.depth = depth;
         this.width = width;
-        field = new Object[depth][width];
+        this.layers = layers;
+        this.tiled = tiled;
+        if(tiled) {
+            int size = 1 << TILE_SHIFT;
+            tilesAcross = (width + size - 1) / size;
+            int tilesDown = (depth + size - 1) / size;
+            layerCells = tilesDown * tilesAcross << 2 * TILE_SHIFT;
+        }
+        else {
+            layerCells = depth * width;
+        }
+        cells = new Object[layers * layerCells];
+        density = new DensityMap(depth, width);
+        int words = (layers * depth * width + 63) / 64;
+        speciesBoards = new long[Species.getCount()][words];
+        occupied = new long[words];
+        males = new long[words];
+        pyramid = new DensityPyramid(depth, width);
+        pyramidValid = true;
+        stats = new ActorStats();
+        events = new EventBus();
+        deaths = new DeathCalendar();
     }
 
     /**
-     * Empty the field.
+     * Empty the field and go back to step 0.
      */
     public void clear()
     {
-        for(int row = 0; row < depth; row++) {
-            for(int col = 0; col < width; col++) {
-                field[row][col] = null;
-            }
+        Arrays.fill(cells, null);
+        for(long[] board : speciesBoards) {
+            Arrays.fill(board, 0);
         }
+        Arrays.fill(occupied, 0);
+        Arrays.fill(males, 0);
+        pyramid.clear();
+        stats.clear();
+        deaths.clear();
+        step = 0;
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Go on to a later step of the simulation. The actors in the field
+     * are as old and hungry as that step makes them, and events are
+     * published for it.
+     * @param step The new step, not before the current one.
+     */
+    public void setStep(int step)
+    {
+        this.step = step;
+        stats.setStep(step);
+        events.setStep(step);
+    }
+
+    /**
+     * @return The calendar of the steps in which the animals of the
+     *         field die of old age or hunger.
+     */
+    public DeathCalendar getDeathCalendar()
+    {
+        return deaths;
+    }
+
+    /**
+     * @return The weather of the regions of the field, or null if the
+     *         weather is the same everywhere.
+     */
+    public WeatherMap getWeatherMap()
+    {
+        return weatherMap;
+    }
+
+    /**
+     * Give the field regional weather, or the same weather everywhere.
+     * @param weatherMap The weather of the regions, or null.
+     */
+    public void setWeatherMap(WeatherMap weatherMap)
+    {
+        this.weatherMap = weatherMap;
+    }
+
+    /**
+     * @param location A location in the field.
+     * @param weather The weather of the whole simulation.
+     * @return The weather at the location: that of its region if the
+     *         field has regional weather, else the given weather.
+     */
+    public String getWeatherAt(Location location, String weather)
+    {
+        return weatherMap == null ? weather : weatherMap.getWeather(location);
+    }
+
+    /**
+     * @return The statistics of the living actors of the field, which
+     *         they keep up to date themselves.
+     */
+    public ActorStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * @return The bus to which the actors of the field publish their
+     *         births, deaths, predation and infections.
+     */
+    public EventBus getEvents()
+    {
+        return events;
     }
 
     /**
@@ -50,11 +275,19 @@ public class Field
      */
     public void clear(Location location)
     {
-        field[location.getRow()][location.getCol()] = null;
+        int row = location.getRow();
+        int col = location.getCol();
+        int layer = location.getLayer();
+        int index = cellIndex(row, col, layer);
+        Object actor = cells[index];
+        if(actor != null) {
+            setBits(actor, row, col, layer, false);
+            cells[index] = null;
+        }
     }
 
     /**
-     * Place an animal or a plant at the given location.
+     * Place an animal or a plant at the given location of the surface.
      * If there is already an animal or a plant at the location it will
      * be lost.
      * @param actor The actor (animal or plant) to be placed.
@@ -75,7 +308,52 @@ public class Field
      */
     public void place(Object actor, Location location)
     {
-        field[location.getRow()][location.getCol()] = actor;
+        int row = location.getRow();
+        int col = location.getCol();
+        int layer = location.getLayer();
+        int index = cellIndex(row, col, layer);
+        Object previous = cells[index];
+        if(previous != null) {
+            setBits(previous, row, col, layer, false);
+        }
+        cells[index] = actor;
+        setBits(actor, row, col, layer, true);
+    }
+
+    /**
+     * Set or clear the bits of a cell in the boards an actor belongs to,
+     * and count it in or out of the blocks of the pyramid.
+     * @param actor The actor in the cell.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     * @param layer The layer of the cell.
+     * @param set Whether to set or clear the bits.
+     */
+    private void setBits(Object actor, int row, int col, int layer, boolean set)
+    {
+        int cell = (layer * depth + row) * width + col;
+        int word = cell >>> 6;
+        long bit = 1L << (cell & 63);
+        int id = Species.getId(actor);
+        if(id >= 0 && pyramidValid) {
+            pyramid.add(id, row, col, set ? 1 : -1);
+        }
+        if(set) {
+            occupied[word] |= bit;
+            if(id >= 0) {
+                speciesBoards[id][word] |= bit;
+            }
+            if(actor instanceof Gendered && ((Gendered) actor).getGender()) {
+                males[word] |= bit;
+            }
+        }
+        else {
+            occupied[word] &= ~bit;
+            if(id >= 0) {
+                speciesBoards[id][word] &= ~bit;
+            }
+            males[word] &= ~bit;
+        }
     }
 
     /**
@@ -85,18 +363,167 @@ public class Field
      */
     public Object getObjectAt(Location location)
     {
-        return getObjectAt(location.getRow(), location.getCol());
+        return getObjectAt(location.getRow(), location.getCol(), location.getLayer());
     }
 
     /**
-     * Return the actor at the given location, if any.
+     * Return the actor at the given location of the surface, if any.
      * @param row The desired row.
      * @param col The desired column.
      * @return The actor at the given location, or null if there is none.
      */
     public Object getObjectAt(int row, int col)
     {
-        return field[row][col];
+        return cells[cellIndex(row, col, 0)];
+    }
+
+    /**
+     * Return the actor at the given location, if any.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @param layer The desired layer.
+     * @return The actor at the given location, or null if there is none.
+     */
+    public Object getObjectAt(int row, int col, int layer)
+    {
+        return cells[cellIndex(row, col, layer)];
+    }
+
+    /**
+     * @return Whether the actors are stored in tiles of 8x8 cells.
+     */
+    public boolean isTiled()
+    {
+        return tiled;
+    }
+
+    /**
+     * @return The index of a cell in the array of actors.
+     */
+    private int cellIndex(int row, int col, int layer)
+    {
+        if(row < 0 || row >= depth || col < 0 || col >= width || layer < 0 || layer >= layers) {
+            throw new ArrayIndexOutOfBoundsException("No cell " + row + "," + col + "," + layer);
+        }
+        int base = layer * layerCells;
+        if(tiled) {
+            int mask = (1 << TILE_SHIFT) - 1;
+            int tile = (row >> TILE_SHIFT) * tilesAcross + (col >> TILE_SHIFT);
+            return base + (tile << 2 * TILE_SHIFT | (row & mask) << TILE_SHIFT | (col & mask));
+        }
+        return base + row * width + col;
+    }
+
+    /**
+     * Return the species at the given location of the surface, read from
+     * the bitboards without touching the actor.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @return The Species id of the actor at the location, or -1 if the
+     *         location is empty or holds an actor of no species.
+     */
+    public int getSpeciesAt(int row, int col)
+    {
+        return getSpeciesAt(row, col, 0);
+    }
+
+    /**
+     * Return the species at the given location, read from the bitboards
+     * without touching the actor.
+     * @param row The desired row.
+     * @param col The desired column.
+     * @param layer The desired layer.
+     * @return The Species id of the actor at the location, or -1 if the
+     *         location is empty or holds an actor of no species.
+     */
+    public int getSpeciesAt(int row, int col, int layer)
+    {
+        int cell = (layer * depth + row) * width + col;
+        int word = cell >>> 6;
+        long bit = 1L << cell;
+        if((occupied[word] & bit) != 0) {
+            for(int id = 0; id < speciesBoards.length; id++) {
+                if((speciesBoards[id][word] & bit) != 0) {
+                    return id;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the species of every cell of a layer, row by row, read from
+     * the bitboards 64 cells at a time.
+     * @param layer The layer.
+     * @param species Receives the Species id of each cell, -1 for an
+     *                empty cell and Species.getCount() for an actor of
+     *                no species. Must hold depth * width entries.
+     */
+    public void copySpecies(int layer, byte[] species)
+    {
+        int cells = depth * width;
+        Arrays.fill(species, 0, cells, (byte) -1);
+        int first = layer * cells;
+        copyBits(occupied, first, first + cells, species, (byte) speciesBoards.length);
+        for(int id = 0; id < speciesBoards.length; id++) {
+            copyBits(speciesBoards[id], first, first + cells, species, (byte) id);
+        }
+    }
+
+    /**
+     * Write a value into the entries of the cells set in a board, from a
+     * first cell to the cell before a last one.
+     */
+    private static void copyBits(long[] board, int first, int last, byte[] target, byte value)
+    {
+        for(int word = first >>> 6; word < board.length && word << 6 < last; word++) {
+            long bits = board[word];
+            while(bits != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if(cell >= first && cell < last) {
+                    target[cell - first] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the actors of a species, 64 cells at a time, from its board.
+     * @param species The Species id.
+     * @return The number of actors of the species in the field.
+     */
+    public int countSpecies(int species)
+    {
+        return countBits(speciesBoards[species]);
+    }
+
+    /**
+     * @return The number of occupied cells in the field.
+     */
+    public int countOccupied()
+    {
+        return countBits(occupied);
+    }
+
+    /**
+     * Count the bits set in a board. Four independent sums let the
+     * processor work on several words at once.
+     */
+    private static int countBits(long[] board)
+    {
+        int a = 0, b = 0, c = 0, d = 0;
+        int i = 0;
+        for(; i + 3 < board.length; i += 4) {
+            a += Long.bitCount(board[i]);
+            b += Long.bitCount(board[i + 1]);
+            c += Long.bitCount(board[i + 2]);
+            d += Long.bitCount(board[i + 3]);
+        }
+        for(; i < board.length; i++) {
+            a += Long.bitCount(board[i]);
+        }
+        return a + b + c + d;
     }
 
     /**
@@ -120,14 +547,27 @@ public class Field
      */
     public List<Location> getFreeAdjacentLocations(Location location)
     {
-        List<Location> free = new LinkedList<>();
-        List<Location> adjacent = adjacentLocations(location);
-        for(Location next : adjacent) {
-            if(getObjectAt(next) == null) {
-                free.add(next);
-            }
+        return getFreeAdjacentLocations(location, rand);
+    }
+
+    /**
+     * Get a list of the free adjacent locations, shuffled with the given
+     * random generator instead of the shared one.
+     * @param location Get locations adjacent to this.
+     * @param random The random generator to shuffle with.
+     * @return A list of free adjacent locations.
+     */
+    public List<Location> getFreeAdjacentLocations(Location location, Random random)
+    {
+        int free = getFreeMask(location);
+        List<Location> locations = new ArrayList<>(Integer.bitCount(free));
+        // Draw the free neighbours in random order.
+        while(free != 0) {
+            int bit = randomBit(free, random);
+            free &= ~(1 << bit);
+            locations.add(neighbourAt(location, bit));
         }
-        return free;
+        return locations;
     }
 
     /**
@@ -140,14 +580,363 @@ public class Field
      */
     public Location freeAdjacentLocation(Location location)
     {
-        // The available free ones.
-        List<Location> free = getFreeAdjacentLocations(location);
-        if(free.size() > 0) {
-            return free.get(0);
+        int free = getFreeMask(location);
+        if(free != 0) {
+            return neighbourAt(location, randomBit(free));
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Return a mask of the neighbours of a location that hold one of
+     * the given species. Bit i of the mask stands for the neighbour
+     * returned by neighbourAt(location, i).
+     * @param location The location whose neighbours to look at.
+     * @param species The species to look for, as a bitmask of Species ids
+     *                (e.g. a diet).
+     * @return The neighbour mask.
+     */
+    public int getNeighbourMask(Location location, int species)
+    {
+        int mask = 0;
+        while(species != 0) {
+            int id = Integer.numberOfTrailingZeros(species);
+            species &= species - 1;
+            mask |= neighbourMask(speciesBoards[id], location);
+        }
+        return mask;
+    }
+
+    /**
+     * Return a mask of the neighbours of a location that hold an animal
+     * of the given species and of the opposite gender.
+     * @param location The location whose neighbours to look at.
+     * @param species The Species id of the animal looking for a mate.
+     * @param isMale The gender of the animal looking for a mate.
+     * @return The neighbour mask.
+     */
+    public int getMateMask(Location location, int species, boolean isMale)
+    {
+        int mask = neighbourMask(speciesBoards[species], location);
+        int maleMask = neighbourMask(males, location);
+        return isMale ? mask & ~maleMask : mask & maleMask;
+    }
+
+    /**
+     * Return a mask of the free neighbours of a location that lie
+     * within the field.
+     * @param location The location whose neighbours to look at.
+     * @return The neighbour mask.
+     */
+    public int getFreeMask(Location location)
+    {
+        int free = validMask(location) & ~neighbourMask(occupied, location);
+        if(layers > 1) {
+            // Keep to the depths the actor in the location prefers, if
+            // any of those neighbours is free.
+            int preferred = free & preferredMask(location);
+            if(preferred != 0) {
+                return preferred;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Return the neighbour of a location that stands for a bit of
+     * a neighbour mask.
+     * @param location The location whose neighbour to return.
+     * @param bit The bit of the mask (0 to 7, or to 25 in a field of
+     *            several layers).
+     * @return The neighbouring location.
+     */
+    public Location neighbourAt(Location location, int bit)
+    {
+        return new Location(location.getRow() + ROW_OFFSETS[bit],
+                            location.getCol() + COL_OFFSETS[bit],
+                            location.getLayer() + LAYER_OFFSETS[bit]);
+    }
+
+    /**
+     * Choose one of the set bits of a mask at random.
+     * @param mask A non-zero mask.
+     * @return The index of the chosen bit.
+     */
+    public static int randomBit(int mask)
+    {
+        return randomBit(mask, rand);
+    }
+
+    /**
+     * Choose one of the set bits of a mask with the given random generator.
+     * @param mask A non-zero mask.
+     * @param random The random generator to choose with.
+     * @return The index of the chosen bit.
+     */
+    public static int randomBit(int mask, Random random)
+    {
+        int rank = random.nextInt(Integer.bitCount(mask));
+        // Drop the lower set bits until the chosen one is the lowest.
+        for(int i = 0; i < rank; i++) {
+            mask &= mask - 1;
+        }
+        return Integer.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * Collect the bits of the 8 neighbours of a location from a board,
+     * or of the 26 in a field of several layers.
+     */
+    private int neighbourMask(long[] board, Location location)
+    {
+        int row = location.getRow();
+        int col = location.getCol();
+        int layer = location.getLayer();
+        int above = rowBits(board, layer, row - 1, col);
+        int middle = rowBits(board, layer, row, col);
+        int below = rowBits(board, layer, row + 1, col);
+        // The middle row loses its centre bit: the location itself.
+        int mask = above | (middle & 1) << 3 | (middle & 4) << 2 | below << 5;
+        if(layers > 1) {
+            mask |= layerBits(board, layer - 1, row, col) << 8
+                    | layerBits(board, layer + 1, row, col) << 17;
+        }
+        return mask;
+    }
+
+    /**
+     * Read the bits of the 3x3 cells around a row and column of a layer,
+     * row by row. A layer outside the field reads as zero.
+     */
+    private int layerBits(long[] board, int layer, int row, int col)
+    {
+        if(layer < 0 || layer >= layers) {
+            return 0;
+        }
+        return rowBits(board, layer, row - 1, col)
+               | rowBits(board, layer, row, col) << 3
+               | rowBits(board, layer, row + 1, col) << 6;
+    }
+
+    /**
+     * Return a mask of the neighbours of a location within the field.
+     */
+    private int validMask(Location location)
+    {
+        int row = location.getRow();
+        int col = location.getCol();
+        int columns = 0b111;
+        if(col == 0) {
+            columns &= 0b110;
+        }
+        if(col == width - 1) {
+            columns &= 0b011;
+        }
+        int mask = (columns & 1) << 3 | (columns & 4) << 2;
+        if(row > 0) {
+            mask |= columns;
+        }
+        if(row < depth - 1) {
+            mask |= columns << 5;
+        }
+        if(layers > 1) {
+            int rows = columns << 3;
+            if(row > 0) {
+                rows |= columns;
+            }
+            if(row < depth - 1) {
+                rows |= columns << 6;
+            }
+            int layer = location.getLayer();
+            if(layer > 0) {
+                mask |= rows << 8;
+            }
+            if(layer < layers - 1) {
+                mask |= rows << 17;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Return a mask of the neighbours of a location at the depths the
+     * species of the actor in the location prefers: those in the layers
+     * it prefers, or closer to them than its own layer.
+     */
+    private int preferredMask(Location location)
+    {
+        int layer = location.getLayer();
+        int id = getSpeciesAt(location.getRow(), location.getCol(), layer);
+        if(id < 0) {
+            return ~0;
+        }
+        int here = Species.getLayerDistance(id, layer, layers);
+        int mask = here == 0 ? SAME_LAYER : 0;
+        if(layer > 0 && isCloser(Species.getLayerDistance(id, layer - 1, layers), here)) {
+            mask |= LAYER_ABOVE;
+        }
+        if(layer < layers - 1 && isCloser(Species.getLayerDistance(id, layer + 1, layers), here)) {
+            mask |= LAYER_BELOW;
+        }
+        return mask;
+    }
+
+    /**
+     * @return Whether a layer at a distance from the preferred depths is
+     *         preferred to one at another distance.
+     */
+    private static boolean isCloser(int distance, int from)
+    {
+        return distance == 0 || distance < from;
+    }
+
+    /**
+     * Read the bits of the cells col-1 to col+1 of a row of a layer of a
+     * board. Cells outside the field read as zero.
+     * @return The three bits, the left cell lowest.
+     */
+    private int rowBits(long[] board, int layer, int row, int col)
+    {
+        if(row < 0 || row >= depth) {
+            return 0;
+        }
+        int start = (layer * depth + row) * width;
+        int bits;
+        if(col == 0) {
+            bits = readBits(board, start, 2) << 1;
         }
         else {
+            bits = readBits(board, start + col - 1, 3);
+        }
+        if(col == width - 1) {
+            bits &= 0b011;
+        }
+        return bits;
+    }
+
+    /**
+     * Read up to three consecutive bits of a board, which may straddle
+     * two words.
+     */
+    private static int readBits(long[] board, int cell, int count)
+    {
+        int word = cell >>> 6;
+        int offset = cell & 63;
+        long bits = board[word] >>> offset;
+        if(offset + count > 64 && word + 1 < board.length) {
+            bits |= board[word + 1] << (64 - offset);
+        }
+        return (int) bits & ((1 << count) - 1);
+    }
+
+    /**
+     * Try to find a free adjacent location in the direction with the
+     * most individuals of the given species within a perception radius.
+     * The counts come from the density tables as they were when
+     * updateDensity was last called. If none of the species is in sight,
+     * a random free adjacent location is chosen as by freeAdjacentLocation.
+     * @param location The location from which to look.
+     * @param radius How many cells away the species can be seen; 0 or 1
+     *               to choose a random free adjacent location.
+     * @param species The species to move towards, as a bitmask of Species ids.
+     * @return A free adjacent location, or null if there is none.
+     */
+    public Location freeAdjacentLocationTowards(Location location, int radius, int species)
+    {
+        return freeAdjacentLocationTowards(location, radius, rand, species);
+    }
+
+    /**
+     * Try to find a free adjacent location in the direction with the most
+     * individuals of the given species, breaking ties with the given
+     * random generator instead of the shared one.
+     * @param location The location from which to look.
+     * @param radius How many cells away the species can be seen.
+     * @param random The random generator to break ties with.
+     * @param species The species to move towards, as a bitmask of Species ids.
+     * @return A free adjacent location, or null if there is none.
+     */
+    public Location freeAdjacentLocationTowards(Location location, int radius,
+                                                Random random, int species)
+    {
+        if(radius <= 1) {
+            // Nothing in sight beyond the adjacent cells.
+            int free = getFreeMask(location);
+            return free != 0 ? neighbourAt(location, randomBit(free, random)) : null;
+        }
+        List<Location> free = getFreeAdjacentLocations(location, random);
+        if(free.isEmpty()) {
             return null;
         }
+        Location best = free.get(0);
+        if(radius > 1) {
+            // Look at a square of side radius centred halfway to the
+            // edge of the perception range, in the direction of each cell.
+            int half = radius / 2;
+            int bestCount = 0;
+            for(Location next : free) {
+                int centreRow = location.getRow() + (next.getRow() - location.getRow()) * half;
+                int centreCol = location.getCol() + (next.getCol() - location.getCol()) * half;
+                int count = density.count(species, centreRow - half, centreCol - half,
+                                          centreRow + half, centreCol + half);
+                if(count > bestCount) {
+                    best = next;
+                    bestCount = count;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Rebuild the species counts used by freeAdjacentLocationTowards
+     * from the current contents of the field.
+     */
+    public void updateDensity()
+    {
+        density.rebuild(this);
+    }
+
+    /**
+     * Return the species counts in blocks of 8x8, 64x64 and 512x512
+     * cells. They are always up to date, except between beginBulkUpdate
+     * and endBulkUpdate.
+     * @return The density pyramid.
+     */
+    public DensityPyramid getPyramid()
+    {
+        return pyramid;
+    }
+
+    /**
+     * Stop keeping the density pyramid up to date, e.g. while several
+     * threads place actors in different rows at once: the blocks of the
+     * pyramid span the rows of several threads. Call endBulkUpdate when
+     * done.
+     */
+    public void beginBulkUpdate()
+    {
+        pyramidValid = false;
+    }
+
+    /**
+     * Recount the density pyramid and keep it up to date again.
+     */
+    public void endBulkUpdate()
+    {
+        pyramid.rebuild(this);
+        pyramidValid = true;
+    }
+
+    /**
+     * Return the species counts as of the last call to updateDensity.
+     * @return The density tables of this field.
+     */
+    public DensityMap getDensity()
+    {
+        return density;
     }
 
     /**
@@ -165,14 +954,22 @@ public class Field
         if(location != null) {
             int row = location.getRow();
             int col = location.getCol();
-            for(int roffset = -1; roffset <= 1; roffset++) {
-                int nextRow = row + roffset;
-                if(nextRow >= 0 && nextRow < depth) {
-                    for(int coffset = -1; coffset <= 1; coffset++) {
-                        int nextCol = col + coffset;
-                        // Exclude invalid locations and the original location.
-                        if(nextCol >= 0 && nextCol < width && (roffset != 0 || coffset != 0)) {
-                            locations.add(new Location(nextRow, nextCol));
+            int layer = location.getLayer();
+            for(int loffset = -1; loffset <= 1; loffset++) {
+                int nextLayer = layer + loffset;
+                if(nextLayer < 0 || nextLayer >= layers) {
+                    continue;
+                }
+                for(int roffset = -1; roffset <= 1; roffset++) {
+                    int nextRow = row + roffset;
+                    if(nextRow >= 0 && nextRow < depth) {
+                        for(int coffset = -1; coffset <= 1; coffset++) {
+                            int nextCol = col + coffset;
+                            // Exclude invalid locations and the original location.
+                            if(nextCol >= 0 && nextCol < width
+                                   && (roffset != 0 || coffset != 0 || loffset != 0)) {
+                                locations.add(new Location(nextRow, nextCol, nextLayer));
+                            }
                         }
                     }
                 }
@@ -202,4 +999,13 @@ public class Field
     {
         return width;
     }
+
+    /**
+     * Return the number of layers of the field.
+     * @return The number of layers, 1 for a flat field.
+     */
+    public int getLayers()
+    {
+        return layers;
+    }
 }
@@ -0,0 +1,461 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One horizontal band of a partitioned field, run in its own process.
+ * The band owns a range of rows of the whole field. It keeps one extra
+ * halo row above and below (where there is a neighbouring band) which
+ * holds copies of the neighbours' edge rows during a step.
+ *
+ * A step is driven by the PartitionedSimulator in two rounds:
+ *  - STEP: the halo rows are filled with the neighbours' edge actors,
+ *    every owned actor acts, and the band reports which of its actors
+ *    ended up in a halo row (migrants) and which halo actors were eaten
+ *    (kills), separately for the band above and the band below.
+ *  - MERGE: the band receives the migrants and kills of its neighbours,
+ *    applies them and reports its population counts and new edge rows.
+ *
+ * Bands are flat: the field of a band has a single layer, and halo rows,
+ * migrants and kills carry no layer.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class FieldBand
+{
+    // Commands sent by the coordinator.
+    static final int STEP = 1;
+    static final int MERGE = 2;
+    static final int STOP = 3;
+
+    // The first row of the whole field owned by this band.
+    private int firstRow;
+    // The number of rows owned by this band.
+    private int rows;
+    // The number of halo rows above the owned rows (0 or 1).
+    private int haloTop;
+    // Whether there are bands above and below this one.
+    private boolean hasAbove, hasBelow;
+    // The owned rows plus the halo rows.
+    private Field field;
+    // The seed of the steps: each step draws from the stream of this seed
+    // plus its number.
+    private long stepSeed;
+    // The animals and plants owned by this band.
+    private List<Animal> animals;
+    private List<Plants> plants;
+    // Copies of the neighbours' edge actors placed in the halo rows.
+    private List<Object> ghosts;
+    // Where each ghost was placed, as the ghosts lose their location when eaten.
+    private List<Location> ghostLocations;
+    // The edge actors last sent to the neighbours, by cell of the whole field.
+    private Map<Integer, Object> sentEdges;
+
+    /**
+     * Connect to the coordinator and serve steps until told to stop.
+     * @param args The coordinator's host and port, and the band index.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int index = Integer.parseInt(args[2]);
+        try(Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(index);
+            out.flush();
+
+            int firstRow = in.readInt();
+            int rows = in.readInt();
+            int depth = in.readInt();
+            int width = in.readInt();
+            boolean snapshot = in.readBoolean();
+            long seed = in.readLong();
+            long stepSeed = in.readLong();
+            // Anything drawn outside the steps differs between the bands.
+            Randomizer.reset(Randomizer.getSeed() + index);
+            FieldBand band = new FieldBand(firstRow, rows, depth, width, seed, stepSeed);
+            band.serve(in, out, snapshot);
+        }
+    }
+
+    /**
+     * Create and populate a band of a field. The band populates its rows
+     * with the tiles of the whole field, so with the seed of a Simulator
+     * it is populated like the same rows of the Simulator's field.
+     * @param firstRow The first row of the whole field owned by the band.
+     * @param rows The number of rows owned by the band.
+     * @param depth The depth of the whole field.
+     * @param width The width of the whole field.
+     * @param seed The seed of the population of the whole field.
+     * @param stepSeed The seed of the steps of the band: each step draws
+     *                 from the stream of this seed plus its number, like
+     *                 the steps of a Simulator.
+     */
+    public FieldBand(int firstRow, int rows, int depth, int width, long seed, long stepSeed)
+    {
+        this.firstRow = firstRow;
+        this.stepSeed = stepSeed;
+        this.rows = rows;
+        hasAbove = firstRow > 0;
+        hasBelow = firstRow + rows < depth;
+        haloTop = hasAbove ? 1 : 0;
+        int haloBottom = hasBelow ? 1 : 0;
+
+        field = new Field(haloTop + rows + haloBottom, width);
+        animals = new ArrayList<>();
+        plants = new ArrayList<>();
+        ghosts = new ArrayList<>();
+        ghostLocations = new ArrayList<>();
+        sentEdges = new HashMap<>();
+        Simulator.populate(field, haloTop, haloTop + rows, firstRow - haloTop,
+                           animals, plants, null, seed);
+    }
+
+    /**
+     * Answer the coordinator's commands until it sends STOP.
+     * @param snapshot Whether to send every actor with the first report.
+     */
+    private void serve(DataInputStream in, DataOutputStream out, boolean snapshot)
+        throws IOException
+    {
+        report(out, snapshot);
+        out.flush();
+        while(true) {
+            int command = in.readByte();
+            if(command == STEP) {
+                boolean isDay = in.readBoolean();
+                // The actors compare weather by identity.
+                String weather = in.readUTF().intern();
+                field.setStep(field.getStep() + 1);
+                placeGhosts(readBlob(in));
+                placeGhosts(readBlob(in));
+                field.updateDensity();
+                RandomSource rand = Randomizer.getRandom();
+                rand.setThreadSeed(stepSeed + field.getStep());
+                try {
+                    Simulator.actAll(field, animals, plants, isDay, weather);
+                }
+                finally {
+                    rand.clearThreadSeed();
+                }
+                writeOutgoing(out);
+            }
+            else if(command == MERGE) {
+                snapshot = in.readBoolean();
+                applyIncoming(readBlob(in));
+                applyIncoming(readBlob(in));
+                removeDead();
+                report(out, snapshot);
+            }
+            else {
+                return;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Place copies of a neighbour's edge actors into the halo rows.
+     * @param blob The edge actors, as written by report.
+     */
+    private void placeGhosts(DataInputStream blob) throws IOException
+    {
+        if(blob == null) {
+            return;
+        }
+        int count = blob.readInt();
+        for(int i = 0; i < count; i++) {
+            int[] header = ActorCodec.readHeader(blob);
+            Location location = new Location(toLocal(header[1]), header[2]);
+            // Ghosts only stand in for the neighbour's actors: they are
+            // neither counted nor aged here.
+            ghosts.add(ActorCodec.create(blob, header[0], field, location, false));
+            ghostLocations.add(location);
+        }
+    }
+
+    /**
+     * Write the migrants and kills for the band above and the band below,
+     * and take the migrants and ghosts out of this band.
+     */
+    private void writeOutgoing(DataOutputStream out) throws IOException
+    {
+        ByteArrayOutputStream upBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream downBytes = new ByteArrayOutputStream();
+        DataOutputStream up = new DataOutputStream(upBytes);
+        DataOutputStream down = new DataOutputStream(downBytes);
+
+        // Halo actors that were eaten must die in their own band.
+        List<Location> upKills = new ArrayList<>();
+        List<Location> downKills = new ArrayList<>();
+        for(int i = 0; i < ghosts.size(); i++) {
+            Object ghost = ghosts.get(i);
+            Location location = ghostLocations.get(i);
+            if(ActorCodec.isAlive(ghost)) {
+                ActorCodec.remove(ghost);
+            }
+            else if(location.getRow() < haloTop) {
+                upKills.add(location);
+            }
+            else {
+                downKills.add(location);
+            }
+        }
+        ghosts.clear();
+        ghostLocations.clear();
+        writeKills(up, upKills);
+        writeKills(down, downKills);
+
+        // Own actors that moved or were born into a halo row migrate.
+        List<Object> upMigrants = new ArrayList<>();
+        List<Object> downMigrants = new ArrayList<>();
+        collectMigrants(animals, upMigrants, downMigrants);
+        collectMigrants(plants, upMigrants, downMigrants);
+        ActorCodec.writeAll(up, upMigrants, firstRow - haloTop);
+        ActorCodec.writeAll(down, downMigrants, firstRow - haloTop);
+        for(Object migrant : upMigrants) {
+            ActorCodec.remove(migrant);
+        }
+        for(Object migrant : downMigrants) {
+            ActorCodec.remove(migrant);
+        }
+
+        writeBlob(out, upBytes.toByteArray());
+        writeBlob(out, downBytes.toByteArray());
+    }
+
+    /**
+     * Write the cells of eaten halo actors, in whole-field coordinates.
+     */
+    private void writeKills(DataOutputStream out, List<Location> kills) throws IOException
+    {
+        out.writeInt(kills.size());
+        for(Location location : kills) {
+            out.writeInt(toGlobal(location.getRow()));
+            out.writeInt(location.getCol());
+        }
+    }
+
+    /**
+     * Move the actors of a list that are in a halo row to the migrant
+     * lists of the band above or below.
+     */
+    private void collectMigrants(List<?> actors, List<Object> upMigrants,
+                                 List<Object> downMigrants)
+    {
+        for(Iterator<?> it = actors.iterator(); it.hasNext(); ) {
+            Object actor = it.next();
+            if(!ActorCodec.isAlive(actor)) {
+                // Eaten after its turn; removed once the step is merged.
+                continue;
+            }
+            int row = ActorCodec.getLocation(actor).getRow();
+            if(row < haloTop) {
+                upMigrants.add(actor);
+                it.remove();
+            }
+            else if(row >= haloTop + rows) {
+                downMigrants.add(actor);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Apply the kills and migrants sent by a neighbouring band.
+     * @param blob The kills and migrants, as written by writeOutgoing.
+     */
+    private void applyIncoming(DataInputStream blob) throws IOException
+    {
+        if(blob == null) {
+            return;
+        }
+        int kills = blob.readInt();
+        for(int i = 0; i < kills; i++) {
+            int row = blob.readInt();
+            int col = blob.readInt();
+            // Kill the actor that was at the cell when the edge was sent,
+            // even if it has moved since.
+            Object victim = sentEdges.get(row * field.getWidth() + col);
+            if(victim != null && ActorCodec.isAlive(victim)) {
+                ActorCodec.remove(victim);
+            }
+        }
+        int migrants = blob.readInt();
+        for(int i = 0; i < migrants; i++) {
+            int[] header = ActorCodec.readHeader(blob);
+            Location location = landingPlace(new Location(toLocal(header[1]), header[2]));
+            if(location == null) {
+                // Overcrowding.
+                ActorCodec.skip(blob, header[0]);
+                continue;
+            }
+            Object actor = ActorCodec.create(blob, header[0], field, location);
+            if(actor instanceof Animal) {
+                animals.add((Animal) actor);
+            }
+            else {
+                plants.add((Plants) actor);
+            }
+        }
+    }
+
+    /**
+     * Find where a migrant can land: its own cell if that is free,
+     * otherwise a free owned cell next to it.
+     * @return The landing place, or null if there is none.
+     */
+    private Location landingPlace(Location location)
+    {
+        if(field.getObjectAt(location) == null) {
+            return location;
+        }
+        for(Location next : field.getFreeAdjacentLocations(location)) {
+            if(isOwned(next.getRow())) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the actors killed by a neighbouring band from the lists.
+     */
+    private void removeDead()
+    {
+        animals.removeIf(animal -> !animal.isAlive());
+        plants.removeIf(plant -> !plant.isAlive());
+    }
+
+    /**
+     * Write the population counts and the edge rows of this band, and
+     * optionally every actor of the band.
+     * @param snapshot Whether to include every actor.
+     */
+    private void report(DataOutputStream out, boolean snapshot) throws IOException
+    {
+        int[] counts = new int[Species.getCount()];
+        for(Animal animal : animals) {
+            counts[Species.getId(animal.getClass())]++;
+        }
+        for(Plants plant : plants) {
+            counts[Species.getId(plant.getClass())]++;
+        }
+        for(int count : counts) {
+            out.writeInt(count);
+        }
+
+        sentEdges.clear();
+        writeBlob(out, hasAbove ? edge(haloTop) : null);
+        writeBlob(out, hasBelow ? edge(haloTop + rows - 1) : null);
+
+        if(snapshot) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream all = new DataOutputStream(bytes);
+            List<Object> actors = new ArrayList<>(animals);
+            actors.addAll(plants);
+            ActorCodec.writeAll(all, actors, firstRow - haloTop);
+            writeBlob(out, bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Write the actors of an owned row and remember them, so that kills
+     * sent back by the neighbour can be applied.
+     * @param row The local row.
+     * @return The written actors.
+     */
+    private byte[] edge(int row) throws IOException
+    {
+        List<Object> actors = new ArrayList<>();
+        for(int col = 0; col < field.getWidth(); col++) {
+            Object actor = field.getObjectAt(row, col);
+            if(actor != null) {
+                actors.add(actor);
+                sentEdges.put(toGlobal(row) * field.getWidth() + col, actor);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ActorCodec.writeAll(new DataOutputStream(bytes), actors, firstRow - haloTop);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return Whether a local row is owned by this band.
+     */
+    private boolean isOwned(int row)
+    {
+        return row >= haloTop && row < haloTop + rows;
+    }
+
+    /**
+     * @return The local row of a row of the whole field.
+     */
+    private int toLocal(int row)
+    {
+        return row - firstRow + haloTop;
+    }
+
+    /**
+     * @return The row of the whole field of a local row.
+     */
+    private int toGlobal(int row)
+    {
+        return row - haloTop + firstRow;
+    }
+
+    /**
+     * Write a block of bytes preceded by its length. A missing block is
+     * written as an empty one.
+     */
+    static void writeBlob(DataOutputStream out, byte[] blob) throws IOException
+    {
+        if(blob == null) {
+            out.writeInt(0);
+        }
+        else {
+            out.writeInt(blob.length);
+            out.write(blob);
+        }
+    }
+
+    /**
+     * Read a block of bytes written by writeBlob.
+     * @return The raw bytes of the block.
+     */
+    static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        byte[] blob = new byte[in.readInt()];
+        in.readFully(blob);
+        return blob;
+    }
+
+    /**
+     * Read a block written by writeBlob.
+     * @return A stream over the block, or null if it was empty.
+     */
+    private static DataInputStream readBlob(DataInputStream in) throws IOException
+    {
+        byte[] blob = readBytes(in);
+        if(blob.length == 0) {
+            return null;
+        }
+        return new DataInputStream(new ByteArrayInputStream(blob));
+    }
+}
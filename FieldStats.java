@@ -12,7 +12,7 @@ import java.util.HashMap;
 public class FieldStats
 {
     // Counters for each type of entity (orca, shark, salmon, etc.) in the simulation.
-    private HashMap<Class, Counter> counters;
+    private HashMap<Class<?>, Counter> counters;
     // Whether the counters are currently up to date.
     private boolean countsValid;
 
@@ -37,7 +37,7 @@ public class FieldStats
         if(!countsValid) {
             generateCounts(field);
         }
-        for(Class key : counters.keySet()) {
+        for(Class<?> key : counters.keySet()) {
             Counter info = counters.get(key);
             buffer.append(info.getName());
             buffer.append(": ");
@@ -51,7 +51,7 @@ public class FieldStats
      * Get the number of individuals in the population of a given class.
      * @return  An int with the number for this class.
      */
-    public int getPopulationCount(Field field, Class key)
+    public int getPopulationCount(Field field, Class<?> key)
     {
         if(!countsValid) {
             generateCounts(field);
@@ -68,7 +68,7 @@ public class FieldStats
     public void reset()
     {
         countsValid = false;
-        for(Class key : counters.keySet()) {
+        for(Class<?> key : counters.keySet()) {
             Counter count = counters.get(key);
             count.reset();
         }
@@ -78,7 +78,17 @@ public class FieldStats
      * Increment the count for one class of animal or plant.
      * @param actorClass The class of animal or plant to increment.
      */
-    public void incrementCount(Class actorClass)
+    public void incrementCount(Class<?> actorClass)
+    {
+        addCount(actorClass, 1);
+    }
+
+    /**
+     * Increase the count for one class of animal or plant.
+     * @param actorClass The class of animal or plant to count.
+     * @param amount The number to add.
+     */
+    public void addCount(Class<?> actorClass, int amount)
     {
         Counter count = counters.get(actorClass);
         if(count == null) {
@@ -87,7 +97,7 @@ public class FieldStats
             count = new Counter(actorClass.getName());
             counters.put(actorClass, count);
         }
-        count.increment();
+        count.add(amount);
     }
 
     /**
@@ -110,7 +120,7 @@ public class FieldStats
         if(!countsValid) {
             generateCounts(field);
         }
-        for(Class key : counters.keySet()) {
+        for(Class<?> key : counters.keySet()) {
             Counter info = counters.get(key);
             if(info.getCount() > 0) {
                 nonZero++;
@@ -124,16 +134,35 @@ public class FieldStats
      * These are not kept up to date as predators and preys
      * are placed in the field, but only when a request
      * is made for the information.
+     *
+     * The species are counted from the field's bitboards, 64 cells at a
+     * time. Only if the field holds actors of no known species is every
+     * cell looked at instead.
      * @param field The field to generate the stats for.
      */
     private void generateCounts(Field field)
     {
         reset();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object actor = field.getObjectAt(row, col);
-                if(actor != null) {
-                    incrementCount(actor.getClass());
+        int counted = 0;
+        for(int id = 0; id < Species.getCount(); id++) {
+            int count = field.countSpecies(id);
+            if(count > 0) {
+                addCount(Species.getSpeciesClass(id), count);
+                counted += count;
+            }
+        }
+        if(counted == field.countOccupied()) {
+            countsValid = true;
+            return;
+        }
+        reset();
+        for(int layer = 0; layer < field.getLayers(); layer++) {
+            for(int row = 0; row < field.getDepth(); row++) {
+                for(int col = 0; col < field.getWidth(); col++) {
+                    Object actor = field.getObjectAt(row, col, layer);
+                    if(actor != null) {
+                        incrementCount(actor.getClass());
+                    }
                 }
             }
         }
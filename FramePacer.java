@@ -0,0 +1,145 @@
+/**
+ * Paces a running simulation. Steps are run at a target rate (or as fast
+ * as possible when unthrottled), and the views are only redrawn at a
+ * target frame rate, so when the simulation outruns the display only
+ * every k-th step is shown. The achieved step rate is measured as well.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class FramePacer
+{
+    // Nanoseconds in a second.
+    private static final long SECOND = 1000000000L;
+    // How often the measured step rate is updated, in nanoseconds.
+    private static final long RATE_WINDOW = SECOND / 2;
+
+    // Target steps per second, or 0 to run unthrottled.
+    private double stepsPerSecond;
+    // Target frames per second.
+    private double framesPerSecond;
+    // When the next step may start.
+    private long nextStep;
+    // When the last frame was drawn.
+    private long lastFrame;
+    // The steps run since the measured rate was last updated, and when that was.
+    private int windowSteps;
+    private long windowStart;
+    // The measured steps per second.
+    private double stepRate;
+
+    /**
+     * Create a pacer.
+     * @param stepsPerSecond Target steps per second, or 0 to run unthrottled.
+     * @param framesPerSecond Target frames per second. Must be greater than zero.
+     */
+    public FramePacer(double stepsPerSecond, double framesPerSecond)
+    {
+        this.stepsPerSecond = stepsPerSecond;
+        this.framesPerSecond = framesPerSecond;
+        start();
+    }
+
+    /**
+     * Restart the pacing, e.g. at the start of a run.
+     */
+    public void start()
+    {
+        long now = System.nanoTime();
+        nextStep = now;
+        lastFrame = now - SECOND;
+        windowStart = now;
+        windowSteps = 0;
+    }
+
+    /**
+     * Set the target step rate.
+     * @param stepsPerSecond Target steps per second, or 0 to run unthrottled.
+     */
+    public void setStepsPerSecond(double stepsPerSecond)
+    {
+        this.stepsPerSecond = stepsPerSecond;
+        nextStep = System.nanoTime();
+    }
+
+    /**
+     * @return Target steps per second, or 0 if unthrottled.
+     */
+    public double getStepsPerSecond()
+    {
+        return stepsPerSecond;
+    }
+
+    /**
+     * Set the target frame rate.
+     * @param framesPerSecond Target frames per second. Must be greater than zero.
+     */
+    public void setFramesPerSecond(double framesPerSecond)
+    {
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    /**
+     * Record that a step has been run, and wait until the next step is
+     * due if the steps are throttled.
+     */
+    public void stepDone()
+    {
+        long now = System.nanoTime();
+        windowSteps++;
+        if(now - windowStart >= RATE_WINDOW) {
+            stepRate = windowSteps * (double) SECOND / (now - windowStart);
+            windowStart = now;
+            windowSteps = 0;
+        }
+
+        if(stepsPerSecond > 0) {
+            nextStep += (long) (SECOND / stepsPerSecond);
+            if(now - nextStep > SECOND) {
+                // Far behind (e.g. the step got slower): do not try to catch up.
+                nextStep = now;
+            }
+            sleepUntil(nextStep);
+        }
+    }
+
+    /**
+     * Check whether the views should be redrawn now. If so, the frame
+     * counts as drawn.
+     * @return true if a frame is due.
+     */
+    public boolean frameDue()
+    {
+        long now = System.nanoTime();
+        if(now - lastFrame >= (long) (SECOND / framesPerSecond)) {
+            lastFrame = now;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The measured steps per second.
+     */
+    public double getStepRate()
+    {
+        return stepRate;
+    }
+
+    /**
+     * Pause until the given time.
+     * @param time The time to wake up, as by System.nanoTime.
+     */
+    private void sleepUntil(long time)
+    {
+        long wait = time - System.nanoTime();
+        if(wait > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            }
+            catch (InterruptedException ie) {
+                // wake up
+            }
+        }
+    }
+}
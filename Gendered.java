@@ -0,0 +1,15 @@
+/**
+ * Implemented by the animals that have a gender and only breed when they
+ * meet a partner of the opposite gender. The field keeps track of the
+ * males so that partners can be found quickly.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public interface Gendered
+{
+    /**
+     * @return true if the animal is male, false if it is female.
+     */
+    boolean getGender();
+}
@@ -1,5 +1,4 @@
 import java.awt.*;
-import java.awt.image.*;
 import javax.swing.*;
 import java.util.*;
 
@@ -19,6 +18,7 @@ public class GraphView implements SimulatorView
     private static GraphPanel graph;
     private static JLabel stepLabel;
     private static JLabel countLabel;
+    private static JLabel rateLabel;
 
     // The classes being tracked by this view
     private Set<Class<?>> classes;
@@ -38,7 +38,7 @@ public class GraphView implements SimulatorView
     {
         stats = new FieldStats();
         classes = new HashSet<>();
-        colors = new HashMap<>();
+        colors = new LinkedHashMap<>();
 
         if (frame == null) {
             frame = makeFrame(width, height, startMax);
@@ -73,6 +73,15 @@ public class GraphView implements SimulatorView
         graph.update(step, field, stats);
     }
 
+    /**
+     * Show how fast the simulation is running.
+     * @param stepsPerSecond The achieved number of steps per second.
+     */
+    public void showStepRate(double stepsPerSecond)
+    {
+        rateLabel.setText(String.format("%.1f steps/s", stepsPerSecond));
+    }
+
     /**
      * Determine whether the simulation should continue to run.
      * @return true If there is more than one species alive.
@@ -110,6 +119,8 @@ public class GraphView implements SimulatorView
         bottom.add(stepLabel);
         countLabel = new JLabel(" ");
         bottom.add(countLabel);
+        rateLabel = new JLabel(" ");
+        bottom.add(rateLabel);
         contentPane.add(bottom, BorderLayout.SOUTH);
 
         frame.pack();
@@ -123,33 +134,42 @@ public class GraphView implements SimulatorView
     // ============================================================================
     /**
      * Nested class: a component to display the graph.
+     *
+     * The counts are kept in a PopulationHistory and the graph is redrawn
+     * from it whenever it is painted. Each pixel column shows one bucket of
+     * the history as a line from its minimum to its maximum count, so the
+     * graph can be zoomed out (with the mouse wheel) over long runs.
      */
     class GraphPanel extends JComponent
     {
-        private static final double SCALE_FACTOR = 0.8;
-
-        // An internal image buffer that is used for painting. For
-        // actual display, this image buffer is then copied to screen.
-        private BufferedImage graphImage;
-        // number of elements to display on the graph is 6 
-        // as there are 6 animal and plant classes.
-        private static final int NUMBER_OF_ELEMENTS = 6;
-        private int lastVals[] = new int[NUMBER_OF_ELEMENTS];
-        private int yMax;
+        // The number of history buckets kept per resolution, per pixel of width.
+        private static final int HISTORY_PER_PIXEL = 2;
+
+        // The counts shown by the graph, created once the species are known.
+        private PopulationHistory history;
+        // The species of the history, in the order of its counts.
+        private Class<?>[] species;
+        // The counts of the latest step, reused between steps.
+        private int[] counts;
+        // The smallest maximum value for the y axis.
+        private int startMax;
+        // How far the graph is zoomed out: each pixel shows 2^zoom samples.
+        private int zoom;
+        private int width, height;
 
         /**
          * Create a new, empty GraphPanel.
          */
         public GraphPanel(int width, int height, int startMax)
         {
-            graphImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            clearImage();
-            
-            for(int i = 0; i < lastVals.length; i++) {
-                lastVals[i] = height;
-            }
-
-            yMax = startMax;
+            this.width = width;
+            this.height = height;
+            this.startMax = startMax;
+            addMouseWheelListener(e -> {
+                zoom = Math.max(0, Math.min(PopulationHistory.LEVELS - 1,
+                                            zoom + e.getWheelRotation()));
+                repaint();
+            });
         }
 
         /**
@@ -157,21 +177,9 @@ public class GraphView implements SimulatorView
          */
         public void newRun()
         {
-            int height = graphImage.getHeight();
-            int width = graphImage.getWidth();
-
-            Graphics g = graphImage.getGraphics();
-            g.copyArea(4, 0, width-4, height, -4, 0);            
-            g.setColor(Color.BLACK);
-            // *******************************************************
-            g.drawLine(width-4, 0, width-4, height);
-            g.drawLine(width-2, 0, width-2, height);
-            // *******************************************************
-
-            for(int i = 0; i < lastVals.length; i++) {
-                lastVals[i] = height;
+            if(history != null) {
+                history.clear();
             }
-            
             repaint();
         }
 
@@ -181,38 +189,17 @@ public class GraphView implements SimulatorView
         public void update(int step, Field field, FieldStats stats)
         {
             if (classes.size() >= 2) {
-                // ****************************************************
-                Iterator<Class<?>> it = classes.iterator();
-                stats.reset();
-                int counts[] = new int[NUMBER_OF_ELEMENTS];
-                for(int i = 0; i < counts.length; i++) {
-                    Class<?> classN = it.next();
-                    counts[i] = stats.getPopulationCount(field, classN);
+                if(history == null || species.length != classes.size()) {
+                    species = classes.toArray(new Class<?>[0]);
+                    counts = new int[species.length];
+                    history = new PopulationHistory(species.length,
+                                                    width * HISTORY_PER_PIXEL);
                 }
-                
-                Graphics g = graphImage.getGraphics();
-
-                int height = graphImage.getHeight();
-                int width = graphImage.getWidth();
-
-                // move graph one pixel to left
-                g.copyArea(1, 0, width-1, height, -1, 0);
-
-                // calculate y, check whether it's out of screen. scale down if necessary.
-                Iterator<Class<?>> it2 = classes.iterator();
-                for(int i = 0; i < NUMBER_OF_ELEMENTS; i++) {
-                    Class<?> classN = it2.next();
-                    int y = height - ((height * counts[i]) / yMax) - 1;
-                    while (y<0) {
-                        scaleDown();
-                        y = height - ((height * counts[i]) / yMax) - 1;
-                    }
-                    g.setColor(LIGHT_GRAY);
-                    g.drawLine(width-2, y, width-2, height);
-                    g.setColor(colors.get(classN));
-                    g.drawLine(width-3, lastVals[i], width-2, y);
-                    lastVals[i] = y;
+                stats.reset();
+                for(int i = 0; i < species.length; i++) {
+                    counts[i] = stats.getPopulationCount(field, species[i]);
                 }
+                history.add(step, counts);
 
                 repaint();
 
@@ -221,47 +208,6 @@ public class GraphView implements SimulatorView
             }
         }
 
-        /**
-         * Scale the current graph down vertically to make more room at the top.
-         */
-        public void scaleDown()
-        {
-            Graphics g = graphImage.getGraphics();
-            int height = graphImage.getHeight();
-            int width = graphImage.getWidth();
-
-            BufferedImage tmpImage = new BufferedImage(width, (int)(height*SCALE_FACTOR), 
-                                                       BufferedImage.TYPE_INT_RGB);
-            Graphics2D gtmp = (Graphics2D) tmpImage.getGraphics();
-
-            gtmp.scale(1.0, SCALE_FACTOR);
-            gtmp.drawImage(graphImage, 0, 0, null);
-
-            int oldTop = (int) (height * (1.0-SCALE_FACTOR));
-
-            g.setColor(Color.WHITE);
-            g.fillRect(0, 0, width, oldTop);
-            g.drawImage(tmpImage, 0, oldTop, null);
-
-            yMax = (int) (yMax / SCALE_FACTOR);
-            for(int i = 0; i < lastVals.length; i++) {
-                lastVals[i] = oldTop + (int) (lastVals[i] * SCALE_FACTOR);
-            }
-
-            repaint();
-        }
-
-        /**
-         * Clear the image on this panel.
-         */
-        final public void clearImage()
-        {
-            Graphics g = graphImage.getGraphics();
-            g.setColor(Color.WHITE);
-            g.fillRect(0, 0, graphImage.getWidth(), graphImage.getHeight());
-            repaint();
-        }
-
         // The following methods are redefinitions of methods
         // inherited from superclasses.
 
@@ -274,7 +220,7 @@ public class GraphView implements SimulatorView
          */
         public Dimension getPreferredSize()
         {
-            return new Dimension(graphImage.getWidth(), graphImage.getHeight());
+            return new Dimension(width, height);
         }
 
         /**
@@ -286,18 +232,59 @@ public class GraphView implements SimulatorView
         }
 
         /**
-         * This component needs to be redisplayed. Copy the internal image 
-         * to screen. (This method gets called by the Swing screen painter 
-         * every time it want this component displayed.)
+         * This component needs to be redisplayed. Draw the visible part
+         * of the history. (This method gets called by the Swing screen
+         * painter every time it want this component displayed.)
          * 
          * @param g The graphics context that can be used to draw on this component.
          */
         public void paintComponent(Graphics g)
         {
-            if(graphImage != null) {
-                g.drawImage(graphImage, 0, 0, null);
+            Dimension size = getSize();
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, size.width, size.height);
+            if(history == null) {
+                return;
+            }
+
+            int level = zoom;
+            int columns = Math.min(size.width, history.getSize(level));
+
+            // Scale the y axis to the largest visible count.
+            int yMax = startMax;
+            for(int age = 0; age < columns; age++) {
+                for(int s = 0; s < species.length; s++) {
+                    yMax = Math.max(yMax, history.getMax(level, age, s));
+                }
             }
+
+            for(int s = 0; s < species.length; s++) {
+                int lastY = -1;
+                for(int age = columns - 1; age >= 0; age--) {
+                    int x = size.width - 1 - age;
+                    int top = toY(history.getMax(level, age, s), yMax, size.height);
+                    int bottom = toY(history.getMin(level, age, s), yMax, size.height);
+                    g.setColor(LIGHT_GRAY);
+                    g.drawLine(x, top, x, size.height);
+                    g.setColor(colors.get(species[s]));
+                    g.drawLine(x, top, x, bottom);
+                    if(lastY >= 0) {
+                        g.drawLine(x - 1, lastY, x, (top + bottom) / 2);
+                    }
+                    lastY = (top + bottom) / 2;
+                }
+            }
+
+            g.setColor(Color.BLACK);
+            g.drawString("max " + yMax + ", " + (1 << level) + " samples/pixel", 4, 12);
+        }
+
+        /**
+         * @return The y coordinate of a count.
+         */
+        private int toY(int count, int yMax, int height)
+        {
+            return height - ((height * count) / yMax) - 1;
         }
     }
 }
-
@@ -1,8 +1,9 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import javax.swing.*;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * A graphical view of the simulation grid.
@@ -11,6 +12,23 @@ import java.util.Map;
  * Colors for each type of species can be defined using the
  * setColor method.
  *
+ * The view shows a viewport of the field: the mouse wheel zooms in and
+ * out around the pointer and dragging pans. Only the visible cells are
+ * painted. Zoomed out so far that a pixel covers a whole block of the
+ * field's DensityPyramid, the pixel shows the colours of the species in
+ * the block blended by their counts, so the cost of a redraw depends on
+ * the size of the window rather than that of the field.
+ *
+ * The view draws from a snapshot of the species in the cells and of the
+ * pyramid, taken by the simulation's thread in showStatus. So zooming
+ * and panning, which redraw on the event dispatch thread, never read
+ * the field while the simulation changes it, e.g. when a
+ * SimulationRunner runs it.
+ *
+ * Of a field of several layers, single cells are shown at the surface,
+ * and blended blocks and the population count all layers. The step label
+ * says that only the surface of the layers is shown.
+ *
  * @author Daniel Koch and Jakub Grzelak
  * @version 2020.02.23
  */
@@ -26,13 +44,15 @@ public class GridView extends JFrame implements SimulatorView
     private final String TIME_PREFIX = "Time: ";
     private final String WEATHER_PREFIX = "Current weather: ";
     private final String POPULATION_PREFIX = "Population: ";
-    private JLabel stepLabel, timeLabel, population, infoLabel, weatherLabel;
+    private final String RATE_PREFIX = "Steps per second: ";
+    private JLabel stepLabel, timeLabel, population, infoLabel, weatherLabel, rateLabel;
     private FieldView fieldView;
 
-    // A map for storing colors for participants in the simulation
-    private Map<Class, Color> colors;
-    // A statistics object computing and storing simulation information
-    private FieldStats stats;
+    // The color of each species, by Species id, as RGB values.
+    private int[] speciesColors;
+    // The number of individuals of each species, by Species id, when
+    // the field was last shown.
+    private int[] counts;
 
     /**
      * Create a view of the given width and height.
@@ -41,14 +61,16 @@ public class GridView extends JFrame implements SimulatorView
      */
     public GridView(int height, int width)
     {
-        stats = new FieldStats();
-        colors = new LinkedHashMap<>();
+        speciesColors = new int[Species.getCount()];
+        Arrays.fill(speciesColors, UNKNOWN_COLOR.getRGB());
+        counts = new int[Species.getCount()];
 
         setTitle("Marine Predator and Pray Simulation");
         stepLabel = new JLabel(STEP_PREFIX, JLabel.CENTER);
         timeLabel = new JLabel(TIME_PREFIX, JLabel.CENTER);
         population = new JLabel(POPULATION_PREFIX, JLabel.CENTER);
         weatherLabel = new JLabel(WEATHER_PREFIX, JLabel.CENTER);
+        rateLabel = new JLabel(RATE_PREFIX, JLabel.CENTER);
 
         setLocation(100, 50);
 
@@ -60,6 +82,7 @@ public class GridView extends JFrame implements SimulatorView
             infoPane.add(stepLabel, BorderLayout.WEST);
             infoPane.add(timeLabel, BorderLayout.EAST);
             infoPane.add(weatherLabel, BorderLayout.CENTER);
+            infoPane.add(rateLabel, BorderLayout.SOUTH);
         contents.add(infoPane, BorderLayout.NORTH);
         contents.add(fieldView, BorderLayout.CENTER);
         contents.add(population, BorderLayout.SOUTH);
@@ -69,12 +92,16 @@ public class GridView extends JFrame implements SimulatorView
 
     /**
      * Define a color to be used for a given class of animal or a plant.
+     * Actors of no species in the Species registry are shown in gray.
      * @param actorClass The actor's Class object.
      * @param color The color to be used for the given class.
      */
-    public void setColor(Class actorClass, Color color)
+    public void setColor(Class<?> actorClass, Color color)
     {
-        colors.put(actorClass, color);
+        int id = Species.getId(actorClass);
+        if(id >= 0) {
+            speciesColors[id] = color.getRGB();
+        }
     }
 
     /**
@@ -85,21 +112,6 @@ public class GridView extends JFrame implements SimulatorView
         infoLabel.setText(text);
     }
 
-    /**
-     * @return The color to be used for a given class of animal or plant.
-     */
-    private Color getColor(Class actorClass)
-    {
-        Color col = colors.get(actorClass);
-        if(col == null) {
-            // no color defined for this class
-            return UNKNOWN_COLOR;
-        }
-        else {
-            return col;
-        }
-    }
-
     /**
      * Show the current status of the field.
      * @param step Which iteration step it is.
@@ -113,8 +125,13 @@ public class GridView extends JFrame implements SimulatorView
             setVisible(true);
         }
 
-        stepLabel.setText(STEP_PREFIX + step);
-        stats.reset();
+        if(field.getLayers() > 1) {
+            stepLabel.setText(STEP_PREFIX + step + " (surface of " + field.getLayers()
+                              + " layers)");
+        }
+        else {
+            stepLabel.setText(STEP_PREFIX + step);
+        }
 
         if(time == true)
         {
@@ -128,32 +145,55 @@ public class GridView extends JFrame implements SimulatorView
         weatherLabel.setText(WEATHER_PREFIX + weatherCondition);
 
         fieldView.preparePaint();
+        fieldView.showField(field);
 
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                Object animal = field.getObjectAt(row, col);
-                if(animal != null) {
-                    stats.incrementCount(animal.getClass());
-                    fieldView.drawMark(col, row, getColor(animal.getClass()));
-                }
-                else {
-                    fieldView.drawMark(col, row, EMPTY_COLOR);
+        // Count from the coarsest blocks of the pyramid rather than the cells.
+        DensityPyramid pyramid = field.getPyramid();
+        int level = pyramid.getLevels() - 1;
+        Arrays.fill(counts, 0);
+        for(int blockRow = 0; blockRow < pyramid.getBlocksDown(level); blockRow++) {
+            for(int blockCol = 0; blockCol < pyramid.getBlocksAcross(level); blockCol++) {
+                for(int id = 0; id < counts.length; id++) {
+                    counts[id] += pyramid.getCount(level, blockRow, blockCol, id);
                 }
             }
         }
-        stats.countFinished();
+        StringBuilder details = new StringBuilder();
+        for(int id = 0; id < counts.length; id++) {
+            if(counts[id] > 0) {
+                details.append(Species.getSpeciesClass(id).getName());
+                details.append(": ");
+                details.append(counts[id]);
+                details.append(' ');
+            }
+        }
 
-        population.setText(POPULATION_PREFIX + stats.getPopulationDetails(field));
+        population.setText(POPULATION_PREFIX + details);
         fieldView.repaint();
     }
 
+    /**
+     * Show how fast the simulation is running.
+     * @param stepsPerSecond The achieved number of steps per second.
+     */
+    public void showStepRate(double stepsPerSecond)
+    {
+        rateLabel.setText(RATE_PREFIX + String.format("%.1f", stepsPerSecond));
+    }
+
     /**
      * Determine whether the simulation should continue to run.
      * @return true If there is more than one species alive.
      */
     public boolean isViable(Field field)
     {
-        return stats.isViable(field);
+        int nonZero = 0;
+        for(int count : counts) {
+            if(count > 0) {
+                nonZero++;
+            }
+        }
+        return nonZero > 1;
     }
 
     /**
@@ -161,7 +201,7 @@ public class GridView extends JFrame implements SimulatorView
      */
     public void reset()
     {
-        stats.reset();
+        Arrays.fill(counts, 0);
     }
     /**
      * Provide a graphical view of a rectangular field. This is
@@ -174,12 +214,39 @@ public class GridView extends JFrame implements SimulatorView
     private class FieldView extends JPanel
     {
         private final int GRID_VIEW_SCALING_FACTOR = 6;
+        // The largest size the view asks for, in pixels.
+        private final int MAX_PREFERRED_WIDTH = 1000;
+        private final int MAX_PREFERRED_HEIGHT = 700;
+        // The most pixels per cell when zoomed in.
+        private final double MAX_SCALE = 32;
+        // How much one notch of the mouse wheel zooms.
+        private final double ZOOM_STEP = 1.25;
+        // The fewest pixels per cell at which cells are drawn with a gap.
+        private final double GAP_SCALE = 3;
 
         private int gridWidth, gridHeight;
-        private int xScale, yScale;
+        // The number of pixels per cell; below 1 when zoomed out.
+        private double scale;
+        // The cell at the top left corner of the view, in fractions of cells.
+        private double top, left;
+        // Whether the viewport has been fitted to the component yet.
+        private boolean fitted;
         Dimension size;
-        private Graphics g;
-        private Image fieldImage;
+        private BufferedImage fieldImage;
+        // The pixels of the image, as RGB values.
+        private int[] pixels;
+        // The snapshot drawn: the species of each cell of the surface (see
+        // Field.copySpecies), the pyramid and the number of layers of the
+        // field last shown. The cells are null until a field is shown.
+        private byte[] cells;
+        private DensityPyramid pyramid;
+        private int layers;
+        // The arrays the next snapshot is taken into, swapped with the
+        // ones drawn once it is complete.
+        private byte[] spareCells;
+        private DensityPyramid sparePyramid;
+        // Where the mouse was when it was last pressed or dragged.
+        private Point dragPoint;
 
         /**
          * Create a new FieldView component.
@@ -189,6 +256,25 @@ public class GridView extends JFrame implements SimulatorView
             gridHeight = height;
             gridWidth = width;
             size = new Dimension(0, 0);
+
+            addMouseWheelListener(e -> zoom(e.getX(), e.getY(),
+                                            Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation())));
+            MouseAdapter pan = new MouseAdapter()
+            {
+                public void mousePressed(MouseEvent e)
+                {
+                    dragPoint = e.getPoint();
+                }
+
+                public void mouseDragged(MouseEvent e)
+                {
+                    Point point = e.getPoint();
+                    pan(point.x - dragPoint.x, point.y - dragPoint.y);
+                    dragPoint = point;
+                }
+            };
+            addMouseListener(pan);
+            addMouseMotionListener(pan);
         }
 
         /**
@@ -196,46 +282,250 @@ public class GridView extends JFrame implements SimulatorView
          */
         public Dimension getPreferredSize()
         {
-            return new Dimension(gridWidth * GRID_VIEW_SCALING_FACTOR,
-                                 gridHeight * GRID_VIEW_SCALING_FACTOR);
+            return new Dimension(Math.min(gridWidth * GRID_VIEW_SCALING_FACTOR, MAX_PREFERRED_WIDTH),
+                                 Math.min(gridHeight * GRID_VIEW_SCALING_FACTOR,
+                                          MAX_PREFERRED_HEIGHT));
         }
 
         /**
          * Prepare for a new round of painting. Since the component
-         * may be resized, compute the scaling factor again.
+         * may be resized, create the image again and keep the
+         * viewport within the new size.
          */
-        public void preparePaint()
+        public synchronized void preparePaint()
         {
             if(! size.equals(getSize())) {  // if the size has changed...
                 size = getSize();
-                fieldImage = fieldView.createImage(size.width, size.height);
-                g = fieldImage.getGraphics();
+                fieldImage = new BufferedImage(Math.max(size.width, 1), Math.max(size.height, 1),
+                                               BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) fieldImage.getRaster().getDataBuffer()).getData();
+                if(!fitted) {
+                    scale = getMinScale();
+                    fitted = size.width > 0 && size.height > 0;
+                }
+                scale = Math.max(scale, getMinScale());
+                clampViewport();
+            }
+        }
+
+        /**
+         * @return The scale at which the whole field fits the view.
+         */
+        private double getMinScale()
+        {
+            double fit = Math.min((double) size.width / gridWidth,
+                                  (double) size.height / gridHeight);
+            return Math.min(Math.max(fit, Double.MIN_NORMAL), MAX_SCALE);
+        }
+
+        /**
+         * Keep the viewport on the field: centred along a side where the
+         * whole field is visible, else within the field.
+         */
+        private void clampViewport()
+        {
+            top = clamp(top, gridHeight, size.height / scale);
+            left = clamp(left, gridWidth, size.width / scale);
+        }
+
+        /**
+         * @return The first visible cell along a side of the field.
+         */
+        private double clamp(double first, int cells, double visible)
+        {
+            if(visible >= cells) {
+                return (cells - visible) / 2;
+            }
+            return Math.max(0, Math.min(first, cells - visible));
+        }
+
+        /**
+         * Zoom in or out, keeping the cell under a pixel in place.
+         * @param x The x coordinate of the pixel.
+         * @param y The y coordinate of the pixel.
+         * @param factor The factor by which to multiply the scale.
+         */
+        private void zoom(int x, int y, double factor)
+        {
+            synchronized(this) {
+                double row = top + y / scale;
+                double col = left + x / scale;
+                scale = Math.max(getMinScale(), Math.min(scale * factor, MAX_SCALE));
+                top = row - y / scale;
+                left = col - x / scale;
+                clampViewport();
+            }
+            redraw();
+        }
+
+        /**
+         * Move the viewport with the mouse.
+         * @param dx The pixels the mouse moved to the right.
+         * @param dy The pixels the mouse moved down.
+         */
+        private void pan(int dx, int dy)
+        {
+            synchronized(this) {
+                top -= dy / scale;
+                left -= dx / scale;
+                clampViewport();
+            }
+            redraw();
+        }
+
+        /**
+         * Draw the last snapshot again, after the viewport changed.
+         */
+        private void redraw()
+        {
+            render();
+            repaint();
+        }
+
+        /**
+         * Take a snapshot of a field and draw it. Called by the thread
+         * that changes the field, between steps. The snapshot is taken
+         * into spare arrays, so the lock is only held to swap them in and
+         * draw, as long as a redraw after zooming takes.
+         * @param field The field to show.
+         */
+        public void showField(Field field)
+        {
+            if(spareCells == null) {
+                spareCells = new byte[gridHeight * gridWidth];
+                sparePyramid = new DensityPyramid(gridHeight, gridWidth);
+            }
+            field.copySpecies(0, spareCells);
+            sparePyramid.copyFrom(field.getPyramid());
+            synchronized(this) {
+                byte[] shownCells = cells;
+                DensityPyramid shownPyramid = pyramid;
+                cells = spareCells;
+                pyramid = sparePyramid;
+                layers = field.getLayers();
+                spareCells = shownCells;
+                sparePyramid = shownPyramid;
+                render();
+            }
+        }
 
-                xScale = size.width / gridWidth;
-                if(xScale < 1) {
-                    xScale = GRID_VIEW_SCALING_FACTOR;
+        /**
+         * Draw the visible part of the snapshot into the image.
+         */
+        private synchronized void render()
+        {
+            if(fieldImage == null || cells == null) {
+                return;
+            }
+            int width = fieldImage.getWidth();
+            int height = fieldImage.getHeight();
+            int background = getBackground().getRGB();
+            // The column shown by each pixel, and one more for the gaps.
+            int[] cols = new int[width + 1];
+            for(int x = 0; x <= width; x++) {
+                cols[x] = (int) Math.floor(left + x / scale);
+            }
+            int level = getLevel(pyramid);
+            boolean gaps = scale >= GAP_SCALE;
+            int lastRow = Integer.MIN_VALUE;
+            for(int y = 0; y < height; y++) {
+                int row = (int) Math.floor(top + y / scale);
+                int nextRow = (int) Math.floor(top + (y + 1) / scale);
+                int offset = y * width;
+                if(row < 0 || row >= gridHeight) {
+                    Arrays.fill(pixels, offset, offset + width, background);
                 }
-                yScale = size.height / gridHeight;
-                if(yScale < 1) {
-                    yScale = GRID_VIEW_SCALING_FACTOR;
+                else if(gaps && nextRow != row) {
+                    // The last pixel row of a cell.
+                    Arrays.fill(pixels, offset, offset + width, background);
+                }
+                else if(row == lastRow) {
+                    // The same cells as the row of pixels above.
+                    System.arraycopy(pixels, offset - width, pixels, offset, width);
+                }
+                else {
+                    for(int x = 0; x < width; x++) {
+                        int col = cols[x];
+                        if(col < 0 || col >= gridWidth || (gaps && cols[x + 1] != col)) {
+                            pixels[offset + x] = background;
+                        }
+                        else if(level >= 0) {
+                            pixels[offset + x] = blendBlock(pyramid, level, row, col, layers);
+                        }
+                        else {
+                            pixels[offset + x] = getCellColor(cells[row * gridWidth + col]);
+                        }
+                    }
+                    lastRow = row;
+                }
+            }
+        }
+
+        /**
+         * @return The coarsest level of the pyramid whose blocks are no
+         *         larger than a pixel, or -1 to show single cells.
+         */
+        private int getLevel(DensityPyramid pyramid)
+        {
+            double cellsPerPixel = 1 / scale;
+            int level = -1;
+            while(level + 1 < pyramid.getLevels()
+                      && pyramid.getBlockSize(level + 1) <= cellsPerPixel) {
+                level++;
+            }
+            return level;
+        }
+
+        /**
+         * @return The colors of the species in the block of a cell, in
+         *         all layers, blended by their counts, with the empty cells.
+         */
+        private int blendBlock(DensityPyramid pyramid, int level, int row, int col, int layers)
+        {
+            int blockSize = pyramid.getBlockSize(level);
+            int blockRow = row / blockSize;
+            int blockCol = col / blockSize;
+            int cells = Math.min(blockSize, gridHeight - blockRow * blockSize)
+                        * Math.min(blockSize, gridWidth - blockCol * blockSize) * layers;
+            int empty = cells;
+            int red = 0, green = 0, blue = 0;
+            for(int id = 0; id < speciesColors.length; id++) {
+                int count = pyramid.getCount(level, blockRow, blockCol, id);
+                if(count > 0) {
+                    int rgb = speciesColors[id];
+                    red += count * ((rgb >> 16) & 0xFF);
+                    green += count * ((rgb >> 8) & 0xFF);
+                    blue += count * (rgb & 0xFF);
+                    empty -= count;
                 }
             }
+            int rgb = EMPTY_COLOR.getRGB();
+            red += empty * ((rgb >> 16) & 0xFF);
+            green += empty * ((rgb >> 8) & 0xFF);
+            blue += empty * (rgb & 0xFF);
+            return (red / cells) << 16 | (green / cells) << 8 | (blue / cells);
         }
 
         /**
-         * Paint on grid location on this field in a given color.
+         * @return The color of a cell of the snapshot.
+         * @param id The species in the cell, as written by Field.copySpecies.
          */
-        public void drawMark(int x, int y, Color color)
+        private int getCellColor(int id)
         {
-            g.setColor(color);
-            g.fillRect(x * xScale, y * yScale, xScale-1, yScale-1);
+            if(id < 0) {
+                return EMPTY_COLOR.getRGB();
+            }
+            if(id >= speciesColors.length) {
+                return UNKNOWN_COLOR.getRGB();
+            }
+            return speciesColors[id];
         }
 
         /**
          * The field view component needs to be redisplayed. Copy the
          * internal image to screen.
          */
-        public void paintComponent(Graphics g)
+        public synchronized void paintComponent(Graphics g)
         {
             if(fieldImage != null) {
                 Dimension currentSize = getSize();
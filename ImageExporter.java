@@ -0,0 +1,252 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import javax.imageio.ImageIO;
+
+/**
+ * Saves pictures of the field as PNG files, e.g. every few steps of a
+ * run without a display.
+ *
+ * A picture shows every cell of the field as a square of pixels in the
+ * color of its actor, the same colors as the views; of a field of
+ * several layers, the surface is shown. Slices of rows are painted in
+ * parallel, straight into the pixels of the image. Encoding and writing
+ * the PNG files, which takes much longer, is only ever done by a thread
+ * of its own while the simulation goes on. A few pictures may wait to be
+ * written. If the files are written more slowly than they are asked for
+ * and the queue is full, the simulation waits briefly for room; if there
+ * is still none, the picture is dropped and counted, so pictures do not
+ * pile up in memory and the simulation is not held up.
+ *
+ * The drawing works with java.awt.headless=true.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class ImageExporter
+{
+    // Color used for empty locations, as in the GridView.
+    private static final Color EMPTY_COLOR = Color.cyan;
+    // Color used for objects that have no defined color.
+    private static final Color UNKNOWN_COLOR = Color.gray;
+    // The least number of rows painted by one task.
+    private static final int SLICE_ROWS = 64;
+    // The number of pictures that may wait to be written.
+    private static final int QUEUE_SIZE = 4;
+    // How long to wait for room in a full queue before dropping a picture,
+    // in milliseconds.
+    private static final long QUEUE_WAIT = 50;
+
+    // The directory the files are written to.
+    private File directory;
+    // The number of pixels along the side of a cell.
+    private int cellSize;
+    // The colors of the classes of actors.
+    private Map<Class<?>, Color> colors;
+    // The color of each species, by Species id, as RGB values.
+    private int[] speciesColors;
+    // The thread writing the files.
+    private ThreadPoolExecutor writer;
+    // The first error in writing a file, reported by the next call.
+    private volatile IOException failure;
+    // The number of pictures dropped because the queue was full.
+    private volatile int dropped;
+
+    /**
+     * Create an exporter writing into a directory, which is created if
+     * it does not exist.
+     * @param directory The name of the directory.
+     * @param cellSize The number of pixels along the side of a cell.
+     * @param colors The colors of the classes of actors.
+     */
+    public ImageExporter(String directory, int cellSize, Map<Class<?>, Color> colors)
+    {
+        if(cellSize < 1) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.directory = new File(directory);
+        if(!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Could not create the directory " + directory));
+        }
+        this.cellSize = cellSize;
+        this.colors = colors;
+        speciesColors = new int[Species.getCount()];
+        Arrays.fill(speciesColors, UNKNOWN_COLOR.getRGB());
+        for(Map.Entry<Class<?>, Color> entry : colors.entrySet()) {
+            int id = Species.getId(entry.getKey());
+            if(id >= 0) {
+                speciesColors[id] = entry.getValue().getRGB();
+            }
+        }
+        // When the queue is full the picture waits briefly for room, and
+        // is dropped if there is none.
+        writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                                        new ArrayBlockingQueue<>(QUEUE_SIZE),
+                                        task -> {
+                                            Thread thread = new Thread(task, "ImageExporter writer");
+                                            thread.setDaemon(true);
+                                            return thread;
+                                        },
+                                        this::enqueue);
+    }
+
+    /**
+     * Paint the field and write it to the file step-NNNNNN.png in the
+     * background.
+     * @param field The field to save.
+     * @param step The number of the step shown.
+     */
+    public void export(Field field, int step)
+    {
+        checkFailure();
+        BufferedImage image = render(field);
+        File file = new File(directory, String.format("step-%06d.png", step));
+        writer.execute(() -> write(image, file));
+    }
+
+    /**
+     * Paint the field into a new image, slices of rows in parallel.
+     * @param field The field to paint.
+     * @return The image, cellSize pixels for each cell.
+     */
+    public BufferedImage render(Field field)
+    {
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        BufferedImage image = new BufferedImage(width * cellSize, depth * cellSize,
+                                                BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int slices = (depth + SLICE_ROWS - 1) / SLICE_ROWS;
+        IntStream.range(0, slices).parallel().forEach(slice -> {
+            int lastRow = Math.min(depth, (slice + 1) * SLICE_ROWS);
+            for(int row = slice * SLICE_ROWS; row < lastRow; row++) {
+                paintRow(field, row, pixels);
+            }
+        });
+        return image;
+    }
+
+    /**
+     * @return The number of pictures dropped so far because they were
+     *         asked for faster than they could be written.
+     */
+    public int getDroppedCount()
+    {
+        return dropped;
+    }
+
+    /**
+     * Wait until all pictures asked for are written, and stop the thread
+     * writing them. The number of dropped pictures, if any, is printed.
+     */
+    public void close()
+    {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(dropped > 0) {
+            System.out.println(dropped + " pictures were dropped, as they could not be written "
+                               + "as fast as they were asked for.");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Put a picture into the full queue of the writer once there is room,
+     * waiting briefly, or drop it.
+     */
+    private void enqueue(Runnable task, ThreadPoolExecutor executor)
+    {
+        if(executor.isShutdown()) {
+            throw new RejectedExecutionException("The exporter is closed");
+        }
+        try {
+            if(executor.getQueue().offer(task, QUEUE_WAIT, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped++;
+    }
+
+    /**
+     * Paint the pixels of a row of cells.
+     */
+    private void paintRow(Field field, int row, int[] pixels)
+    {
+        int lineWidth = field.getWidth() * cellSize;
+        int offset = row * cellSize * lineWidth;
+        for(int col = 0; col < field.getWidth(); col++) {
+            int rgb = getCellColor(field, row, col);
+            int x = offset + col * cellSize;
+            for(int i = 0; i < cellSize; i++) {
+                pixels[x + i] = rgb;
+            }
+        }
+        // The other lines of pixels of the cells are the same.
+        for(int line = 1; line < cellSize; line++) {
+            System.arraycopy(pixels, offset, pixels, offset + line * lineWidth, lineWidth);
+        }
+    }
+
+    /**
+     * @return The color of a cell of the field.
+     */
+    private int getCellColor(Field field, int row, int col)
+    {
+        int id = field.getSpeciesAt(row, col);
+        if(id >= 0) {
+            return speciesColors[id];
+        }
+        Object actor = field.getObjectAt(row, col);
+        if(actor == null) {
+            return EMPTY_COLOR.getRGB();
+        }
+        return colors.getOrDefault(actor.getClass(), UNKNOWN_COLOR).getRGB();
+    }
+
+    /**
+     * Write an image to a PNG file, remembering the first error.
+     */
+    private void write(BufferedImage image, File file)
+    {
+        try {
+            if(!ImageIO.write(image, "png", file)) {
+                throw new IOException("No PNG writer available");
+            }
+        }
+        catch(IOException e) {
+            if(failure == null) {
+                failure = new IOException("Could not write the image " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Report an error in writing a file.
+     */
+    private void checkFailure()
+    {
+        IOException e = failure;
+        if(e != null) {
+            failure = null;
+            throw new UncheckedIOException(e.getMessage(), e);
+        }
+    }
+}
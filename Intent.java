@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What an animal or a plant wants to do in one step of the two-phase
+ * update: die, eat the actor in a neighbouring cell, move to a free
+ * neighbouring cell, and give birth into free neighbouring cells.
+ * Intents are planned against the state of the field at the start of
+ * the step and settled together by the SynchronousStepper.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class Intent
+{
+    // The animal or plant that plans.
+    private Object actor;
+    // Where the actor is at the start of the step.
+    private Location location;
+    // The random generator of the actor for this step.
+    private RandomSource random;
+    // The priority of the actor when it competes for a cell. Unique per step.
+    private long priority;
+    // Whether the actor dies this step (old age, hunger, overcrowding).
+    private boolean dies;
+    // Why the actor dies, as an EventBus cause of death.
+    private int deathCause;
+    // The cell of the actor to eat, or null.
+    private Location eat;
+    // Whether to move into the cell of the eaten actor.
+    private boolean moveIn;
+    // The free cell to move to, or null to stay.
+    private Location move;
+    // The free cells to give birth into.
+    private List<Location> births;
+
+    /**
+     * Create an empty intent: the actor stays where it is.
+     * @param actor The animal or plant that plans.
+     * @param location Where the actor is at the start of the step.
+     * @param random The random generator of the actor for this step.
+     * @param priority The priority of the actor when it competes for a cell.
+     */
+    public Intent(Object actor, Location location, RandomSource random, long priority)
+    {
+        this.actor = actor;
+        this.location = location;
+        this.random = random;
+        this.priority = priority;
+        births = new ArrayList<>();
+    }
+
+    /**
+     * Indicate that the actor dies this step.
+     * @param cause Why it dies, as an EventBus cause of death (e.g. EventBus.AGE).
+     */
+    public void setDies(int cause)
+    {
+        dies = true;
+        deathCause = cause;
+    }
+
+    /**
+     * Indicate that the actor wants to eat what is in a neighbouring cell.
+     * @param where The cell of the actor to eat.
+     * @param moveIn Whether to move into the cell after eating.
+     */
+    public void setEat(Location where, boolean moveIn)
+    {
+        eat = where;
+        this.moveIn = moveIn;
+    }
+
+    /**
+     * Indicate that the actor wants to move to a free neighbouring cell.
+     * @param where The free cell.
+     */
+    public void setMove(Location where)
+    {
+        move = where;
+    }
+
+    /**
+     * Choose free neighbouring cells for the given number of births.
+     * There may be fewer cells than births.
+     * @param count The number of births.
+     * @param field The field at the start of the step.
+     */
+    public void setBirths(int count, Field field)
+    {
+        if(count > 0) {
+            List<Location> free = field.getFreeAdjacentLocations(location, random);
+            for(int b = 0; b < count && b < free.size(); b++) {
+                births.add(free.get(b));
+            }
+        }
+    }
+
+    /**
+     * @return The animal or plant that plans.
+     */
+    public Object getActor()
+    {
+        return actor;
+    }
+
+    /**
+     * @return Where the actor is at the start of the step.
+     */
+    public Location getLocation()
+    {
+        return location;
+    }
+
+    /**
+     * @return The random generator of the actor for this step.
+     */
+    public RandomSource getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * @return The priority of the actor when it competes for a cell.
+     */
+    public long getPriority()
+    {
+        return priority;
+    }
+
+    /**
+     * @return Whether the actor dies this step.
+     */
+    public boolean getDies()
+    {
+        return dies;
+    }
+
+    /**
+     * @return Why the actor dies, as an EventBus cause of death.
+     */
+    public int getDeathCause()
+    {
+        return deathCause;
+    }
+
+    /**
+     * @return The cell of the actor to eat, or null.
+     */
+    public Location getEat()
+    {
+        return eat;
+    }
+
+    /**
+     * @return Whether to move into the cell of the eaten actor.
+     */
+    public boolean getMoveIn()
+    {
+        return moveIn;
+    }
+
+    /**
+     * @return The free cell to move to, or null.
+     */
+    public Location getMove()
+    {
+        return move;
+    }
+
+    /**
+     * @return The free cells to give birth into.
+     */
+    public List<Location> getBirths()
+    {
+        return births;
+    }
+}
@@ -1,5 +1,7 @@
 /**
- * Represent a location in a rectangular grid.
+ * Represent a location in a rectangular grid, or in one of the layers
+ * of a grid of several layers (see Field). Layer 0 is the surface and
+ * the only layer of a flat grid.
  * 
  * @author David J. Barnes and Michael Kölling
  * @version 2016.02.29
@@ -9,16 +11,30 @@ public class Location
     // Row and column positions.
     private int row;
     private int col;
+    // The layer, counted down from the surface.
+    private int layer;
 
     /**
-     * Represent a row and column.
+     * Represent a row and column of the surface layer.
      * @param row The row.
      * @param col The column.
      */
     public Location(int row, int col)
+    {
+        this(row, col, 0);
+    }
+
+    /**
+     * Represent a row, column and layer.
+     * @param row The row.
+     * @param col The column.
+     * @param layer The layer.
+     */
+    public Location(int row, int col, int layer)
     {
         this.row = row;
         this.col = col;
+        this.layer = layer;
     }
     
     /**
@@ -28,7 +44,7 @@ public class Location
     {
         if(obj instanceof Location) {
             Location other = (Location) obj;
-            return row == other.getRow() && col == other.getCol();
+            return row == other.getRow() && col == other.getCol() && layer == other.getLayer();
         }
         else {
             return false;
@@ -36,23 +52,25 @@ public class Location
     }
     
     /**
-     * Return a string of the form row,column
+     * Return a string of the form row,column, or row,column,layer
+     * below the surface.
      * @return A string representation of the location.
      */
     public String toString()
     {
-        return row + "," + col;
+        return layer == 0 ? row + "," + col : row + "," + col + "," + layer;
     }
     
     /**
      * Use the top 16 bits for the row value and the bottom for
-     * the column. Except for very big grids, this should give a
-     * unique hash code for each (row, col) pair.
+     * the column, and mix in the layer. Except for very big grids,
+     * this should give a unique hash code for each (row, col) pair
+     * of a layer.
      * @return A hashcode for the location.
      */
     public int hashCode()
     {
-        return (row << 16) + col;
+        return (row << 16) + col + layer * 0x9E3779B9;
     }
     
     /**
@@ -70,4 +88,12 @@ public class Location
     {
         return col;
     }
+
+    /**
+     * @return The layer, 0 at the surface.
+     */
+    public int getLayer()
+    {
+        return layer;
+    }
 }
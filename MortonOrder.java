@@ -0,0 +1,152 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sorts lists of actors by the Z-order (Morton) index of their cells.
+ * The Morton index interleaves the bits of the row and the column, so
+ * cells that are close in the field are mostly close in the order too.
+ * Actors that act one after the other then look at the same parts of
+ * the field, which stay in the cache, instead of jumping about the field
+ * in the order they were born in.
+ *
+ * The sort is a radix sort on the indexes, one byte at a time, so it
+ * takes linear time and no comparisons.
+ *
+ * Of a field of several layers, the actors are sorted layer by layer,
+ * the order in which the field stores its cells, and by the Morton index
+ * of their row and column within each layer.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class MortonOrder
+{
+    // The number of bits sorted in each pass.
+    private static final int RADIX_BITS = 8;
+    // The index given to dead actors, which have no cell: after all others.
+    private static final long NO_CELL = 0xFFFFFFFFL;
+
+    /**
+     * @return The Morton index of a cell: the bits of the row and the
+     *         column interleaved, the column's in the even bits. Rows and
+     *         columns must be below 65536.
+     */
+    public static int index(int row, int col)
+    {
+        return spread(row) << 1 | spread(col);
+    }
+
+    /**
+     * Sort animals or plants by the Morton index of their cells. Dead
+     * actors go to the end. Actors in the same cell keep their order.
+     * @param actors The Animal or Plants objects to sort.
+     */
+    public static <T> void sort(List<T> actors)
+    {
+        int count = actors.size();
+        // The index of each actor in the high half and its position in
+        // the list in the low half, so that sorting on the high half
+        // carries the positions along.
+        long[] keys = new long[count];
+        long highest = 0;
+        // The layer of each actor, by its position in the list, and the
+        // deepest of them.
+        int[] layers = new int[count];
+        int deepest = 0;
+        for(int i = 0; i < count; i++) {
+            Location location = ActorCodec.getLocation(actors.get(i));
+            long index = location == null ? NO_CELL
+                                          : index(location.getRow(), location.getCol()) & NO_CELL;
+            keys[i] = index << 32 | i;
+            highest |= index;
+            if(location != null) {
+                layers[i] = location.getLayer();
+                deepest = Math.max(deepest, layers[i]);
+            }
+        }
+
+        long[] sorted = new long[count];
+        int[] starts = new int[(1 << RADIX_BITS) + 1];
+        // Only the bytes that are set in some index need a pass.
+        for(int shift = 32; shift < 64 && (highest >>> (shift - 32)) != 0; shift += RADIX_BITS) {
+            Arrays.fill(starts, 0);
+            for(long key : keys) {
+                starts[digit(key, shift) + 1]++;
+            }
+            for(int d = 0; d < 1 << RADIX_BITS; d++) {
+                starts[d + 1] += starts[d];
+            }
+            for(long key : keys) {
+                sorted[starts[digit(key, shift)]++] = key;
+            }
+            long[] swap = keys;
+            keys = sorted;
+            sorted = swap;
+        }
+        if(deepest > 0) {
+            keys = sortByLayer(keys, sorted, layers, deepest);
+        }
+
+        Object[] before = actors.toArray();
+        for(int i = 0; i < count; i++) {
+            @SuppressWarnings("unchecked")
+            T actor = (T) before[(int) keys[i]];
+            actors.set(i, actor);
+        }
+    }
+
+    /**
+     * Sort keys by the layer of their actors, keeping the order within
+     * each layer. Dead actors stay at the end.
+     * @param keys The keys, sorted by index.
+     * @param sorted Receives the sorted keys.
+     * @param layers The layer of each actor, by its position in the list.
+     * @param deepest The deepest layer of an actor.
+     * @return The sorted keys.
+     */
+    private static long[] sortByLayer(long[] keys, long[] sorted, int[] layers, int deepest)
+    {
+        // One count per layer, and one for the dead actors.
+        int[] starts = new int[deepest + 3];
+        for(long key : keys) {
+            starts[layerDigit(key, layers, deepest) + 1]++;
+        }
+        for(int d = 0; d < deepest + 2; d++) {
+            starts[d + 1] += starts[d];
+        }
+        for(long key : keys) {
+            sorted[starts[layerDigit(key, layers, deepest)]++] = key;
+        }
+        return sorted;
+    }
+
+    /**
+     * @return The layer of the actor of a key, or one below the deepest
+     *         layer for a dead actor.
+     */
+    private static int layerDigit(long key, int[] layers, int deepest)
+    {
+        return key >>> 32 == NO_CELL ? deepest + 1 : layers[(int) key];
+    }
+
+    /**
+     * @return The digit of a key sorted in the pass at the given shift.
+     */
+    private static int digit(long key, int shift)
+    {
+        return (int) (key >>> shift) & ((1 << RADIX_BITS) - 1);
+    }
+
+    /**
+     * @return The low 16 bits of a number, spread out to the even bits.
+     */
+    private static int spread(int x)
+    {
+        x &= 0xFFFF;
+        x = (x | x << 8) & 0x00FF00FF;
+        x = (x | x << 4) & 0x0F0F0F0F;
+        x = (x | x << 2) & 0x33333333;
+        x = (x | x << 1) & 0x55555555;
+        return x;
+    }
+}
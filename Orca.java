@@ -1,6 +1,7 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
-import java.util.Iterator;
-import java.util.Random;
 
 /**
  * A simple model of a Orca.
@@ -9,31 +10,31 @@ import java.util.Random;
  * @author Daniel Koch and Jakub Grzelak
  * @version 2020.02.23 (2)
  */
-public class Orca extends Animal
+public class Orca extends Animal implements Gendered
 {
     // Characteristics shared by all Orcas (class variables).
 
     // The age at which a Orca can start to breed.
     private static final int BREEDING_AGE = 15;
     // The age to which a Orca can live.
-    private static final int MAX_AGE = 150;
+    static final int MAX_AGE = 150;
     // The likelihood of a Orca breeding.
     private static final double BREEDING_PROBABILITY = 0.16;
+    private static final long BREEDING_THRESHOLD = RandomSource.threshold(BREEDING_PROBABILITY);
     // The maximum number of births.
     private static final int MAX_LITTER_SIZE = 3;
     // The food value of a single Salmon or Scubadiver. In effect, this is the
     // number of steps an Orca can go before it has to eat again.
-    private static final int FOOD_VALUE = 14;
+    static final int FOOD_VALUE = 14;
+    // How many cells away an Orca sees salmons and scubadivers, unless
+    // changed with Species.setPerceptionRadius.
+    static final int PERCEPTION_RADIUS = 8;
     // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
+    private static final RandomSource rand = Randomizer.getRandom();
     // A chance of dying after being infected.
-    private static final double DEATH_CHANCE = 0.002;
+    static final double DEATH_CHANCE = 0.002;
 
     // Individual characteristics (instance fields).
-    // The Orca's age.
-    private int age;
-    // The Orca's food level, which is increased by eating salmons or scubadivers.
-    private int foodLevel;
     // The Orca's gender
     private boolean isMale;
 
@@ -50,15 +51,15 @@ public class Orca extends Animal
         super(field, location);
         if(randomAge)
         {
-            age = rand.nextInt(MAX_AGE);
-            foodLevel = rand.nextInt(FOOD_VALUE);
+            setAge(rand.nextInt(MAX_AGE));
+            setFoodLevel(rand.nextInt(FOOD_VALUE));
         }
         else {
-            age = 0;
-            foodLevel = FOOD_VALUE;
+            setFoodLevel(FOOD_VALUE);
         }
-        Random rd = new Random();
-        this.isMale = rd.nextBoolean();
+        this.isMale = rand.nextBoolean();
+        // Place again so that the field records the gender.
+        field.place(this, location);
     }
 
     /**
@@ -71,15 +72,12 @@ public class Orca extends Animal
      */
     public void act(List<Animal> newOrcas, boolean time, String weather)
     {
-        incrementAge();
-        incrementHunger();
-
         // orca is twice more active at night.
         int activity = 1;
         if(!time){
             activity = 2;
         }
-        if(isAlive() && weather != "freezing") {
+        if(isAlive()) {
             giveBirth(newOrcas);
 
             // orca's activity loop  (is twice more active at night).
@@ -87,8 +85,10 @@ public class Orca extends Animal
               // Move towards a source of food if found.
               Location newLocation = findFood();
               if(newLocation == null && isAlive()) {
-                  // No food found - try to move to a free location.
-                  newLocation = getField().freeAdjacentLocation(getLocation());
+                  // No food found - try to move towards food in sight.
+                  newLocation = getField().freeAdjacentLocationTowards(
+                      getLocation(), Species.getPerceptionRadius(getSpeciesId()),
+                      Species.getDiet(getSpeciesId()));
               }
               // See if it was possible to move.
               if(newLocation != null && isAlive()) {
@@ -96,74 +96,52 @@ public class Orca extends Animal
               }
               else {
                 // Overcrowding.
-                setDead();
+                setDead(EventBus.OVERCROWDING);
               }
             }
         }
     }
 
     /**
-     * Increase the age. This could result in the Orca's death.
+     * Plan what the Orca does in a step of the two-phase update:
+     * the same as act, but recorded in the intent. An Orca moves at
+     * most once per step in this mode, even at night.
+     * @param intent The intent to fill in.
+     * @param time Time: day or night.
+     * @param weather Current weather condition.
      */
-    private void incrementAge()
+    protected void plan(Intent intent, boolean time, String weather)
     {
-        age++;
-        if(age > MAX_AGE) {
-            setDead();
+        RandomSource random = intent.getRandom();
+        Field field = getField();
+        Location location = getLocation();
+        if(genderCheck()) {
+            intent.setBirths(breed(random), field);
         }
-    }
-
-    /**
-     * Make this Orca more hungry. This could result in the Orca's death.
-     */
-    private void incrementHunger()
-    {
-        foodLevel--;
-        if(foodLevel <= 0) {
-            setDead();
+        int food = field.getNeighbourMask(location, Species.getDiet(getSpeciesId()));
+        if(food != 0) {
+            intent.setEat(field.neighbourAt(location, Field.randomBit(food, random)), true);
+        }
+        else {
+            Location newLocation = field.freeAdjacentLocationTowards(
+                location, Species.getPerceptionRadius(getSpeciesId()), random,
+                Species.getDiet(getSpeciesId()));
+            if(newLocation != null) {
+                intent.setMove(newLocation);
+            }
+            else {
+                // Overcrowding.
+                intent.setDies(EventBus.OVERCROWDING);
+            }
         }
     }
 
     /**
-     * Look for salmons and scubadivers adjacent to the current location.
-     * Only the first live Salmon or Scubadiver is eaten.
-     * If Orca eats an infected salmon, then both the orca and the
-     * salmon die.
-     * @return Where food was found, or null if it wasn't.
+     * @return A new born Orca.
      */
-    private Location findFood()
+    protected Animal createYoung(Field field, Location location)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-          Location where = it.next();
-          Object animal = field.getObjectAt(where);
-          if(animal instanceof Salmon) {
-              Salmon salmon = (Salmon) animal;
-                if(salmon.isAlive() && salmon.getInfection()) {
-                    isInfected = true;
-                    if(rand.nextDouble() <= DEATH_CHANCE){
-                        setDead();
-                    }
-                    salmon.setDead();
-                }
-                else if(salmon.isAlive()){
-                    salmon.setDead();
-                    foodLevel = FOOD_VALUE;
-                    return where;
-                }
-          }
-          else if(animal instanceof Scubadiver) {
-                  Scubadiver scubadiver = (Scubadiver) animal;
-                  if(scubadiver.isAlive()) {
-                  scubadiver.setDead();
-                  foodLevel = FOOD_VALUE;
-                  return where;
-                  }
-          }
-        }
-        return null;
+        return new Orca(false, field, location);
     }
 
     /**
@@ -182,7 +160,7 @@ public class Orca extends Animal
           // Get a list of adjacent free locations.
           Field field = getField();
           List<Location> free = field.getFreeAdjacentLocations(getLocation());
-          int births = breed();
+          int births = breed(rand);
           for(int b = 0; b < births && free.size() > 0; b++) {
               Location loc = free.remove(0);
               Orca young = new Orca(false, field, loc);
@@ -197,31 +175,20 @@ public class Orca extends Animal
      */
     private boolean genderCheck()
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if (animal instanceof Orca){
-                Orca orca = (Orca) animal;
-                if(this.isMale!=orca.getGender())
-                    return true;
-            }
-        }
-        return false;
+        return getField().getMateMask(getLocation(), getSpeciesId(), isMale) != 0;
     }
 
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param random The random generator to use.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(RandomSource random)
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && random.chance(BREEDING_THRESHOLD)) {
+            births = random.nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -231,7 +198,7 @@ public class Orca extends Animal
      */
     private boolean canBreed()
     {
-        return age >= BREEDING_AGE;
+        return getAge() >= BREEDING_AGE;
     }
 
     /**
@@ -242,4 +209,29 @@ public class Orca extends Animal
        return isMale;
     }
 
+    /**
+     * Write the Orca's age, food level, gender and infection state.
+     * @param out Where to write the state to.
+     */
+    protected void writeState(DataOutput out) throws IOException
+    {
+        out.writeInt(getAge());
+        out.writeInt(getFoodLevel());
+        out.writeBoolean(isMale);
+        out.writeBoolean(isInfected);
+    }
+
+    /**
+     * Overwrite the Orca's state with one written by writeState.
+     * @param in Where to read the state from.
+     */
+    protected void readState(DataInput in) throws IOException
+    {
+        setAge(in.readInt());
+        setFoodLevel(in.readInt());
+        isMale = in.readBoolean();
+        isInfected = in.readBoolean();
+        // Place again so that the field records the gender.
+        getField().place(this, getLocation());
+    }
 }
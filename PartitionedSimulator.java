@@ -0,0 +1,408 @@
+import java.awt.Color;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A predator-prey simulation whose field is split into horizontal bands,
+ * each stepped by its own FieldBand process. The bands connect to this
+ * coordinator over local TCP sockets. The coordinator owns the time of
+ * day and the weather, relays the halo rows, migrants and kills between
+ * neighbouring bands, and adds up the population counts.
+ *
+ * With a single band no actors cross a band boundary, and the band
+ * populates and steps its field exactly like the Simulator does.
+ *
+ * Only flat fields can be partitioned: unlike the Simulator, there is no
+ * constructor with a number of layers.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class PartitionedSimulator
+{
+    // The default width for the grid.
+    private static final int DEFAULT_WIDTH = 100;
+    // The default depth of the grid.
+    private static final int DEFAULT_DEPTH = 60;
+    // How long to wait for a band process to stop, in seconds.
+    private static final int STOP_TIMEOUT = 10;
+
+    // The depth and width of the whole field.
+    private int depth, width;
+    // The current step of the simulation.
+    private int step;
+    // The time of day and the weather, shared by all bands. They are made
+    // and changed like those of the Simulator, from the same seed.
+    private Time time = new Time(true);
+    private Weather weather = new Weather();
+    // The band processes and their connections.
+    private List<Process> processes;
+    private DataInputStream[] ins;
+    private DataOutputStream[] outs;
+    // The last edge rows reported by each band.
+    private byte[][] topEdges, bottomEdges;
+    // The population counts of each band, by species tag.
+    private int[][] counts;
+    // A copy of the whole field for the views, or null if there are none.
+    private Field field;
+    // Graphical views of the simulation.
+    private List<SimulatorView> views;
+
+    /**
+     * Construct a partitioned simulation of the default size.
+     * @param bands The number of band processes. Must be greater than zero.
+     */
+    public PartitionedSimulator(int bands)
+    {
+        this(DEFAULT_DEPTH, DEFAULT_WIDTH, bands);
+    }
+
+    /**
+     * Construct a partitioned simulation and start its band processes.
+     * The views are only shown if a display is available.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param bands The number of band processes, at most the depth.
+     */
+    public PartitionedSimulator(int depth, int width, int bands)
+    {
+        if(width <= 0 || depth <= 0) {
+            System.out.println("The dimensions must be greater than zero.");
+            System.out.println("Using default values.");
+            depth = DEFAULT_DEPTH;
+            width = DEFAULT_WIDTH;
+        }
+        if(bands <= 0 || bands > depth) {
+            throw new IllegalArgumentException("Cannot split " + depth + " rows into "
+                                               + bands + " bands.");
+        }
+        this.depth = depth;
+        this.width = width;
+
+        views = new ArrayList<>();
+        if(!GraphicsEnvironment.isHeadless()) {
+            field = new Field(depth, width);
+            SimulatorView view = new GridView(depth, width);
+            setColors(view);
+            views.add(view);
+            view = new GraphView(500, 150, 500);
+            setColors(view);
+            views.add(view);
+        }
+
+        try {
+            startBands(bands);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not start the bands", e);
+        }
+        time.timeReset();
+        weather.weatherReset();
+        updateViews();
+    }
+
+    /**
+     * Run the simulation from its current state for the given number of steps.
+     * Stop before the given number of steps if it ceases to be viable.
+     * @param numSteps The number of steps to run for.
+     */
+    public void simulate(int numSteps)
+    {
+        for(int step = 1; step <= numSteps && isViable(); step++) {
+            simulateOneStep();
+        }
+    }
+
+    /**
+     * Run the simulation from its current state for a single step.
+     */
+    public void simulateOneStep()
+    {
+        step++;
+        time.timeCheck();
+        weather.weatherCheck();
+        try {
+            exchange();
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Lost a band at step " + step, e);
+        }
+        updateViews();
+    }
+
+    /**
+     * Determine whether the simulation is still viable.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable()
+    {
+        int nonZero = 0;
+        for(int tag = 0; tag < Species.getCount(); tag++) {
+            if(getCount(tag) > 0) {
+                nonZero++;
+            }
+        }
+        return nonZero > 1;
+    }
+
+    /**
+     * Get the number of individuals of a species over all bands.
+     * @param species The class of animal or plant.
+     * @return The number of individuals.
+     */
+    public int getPopulationCount(Class<?> species)
+    {
+        return getCount(Species.getId(species));
+    }
+
+    /**
+     * @return The current step of the simulation.
+     */
+    public int getStep()
+    {
+        return step;
+    }
+
+    /**
+     * Check that a partitioned simulation of a single band gives the same
+     * results as the Simulator: run both from the default seed for a
+     * number of steps and compare the population of every species at the
+     * start and after every step. The first difference is printed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param numSteps The number of steps to compare.
+     * @return true if the populations were the same in every step.
+     */
+    public static boolean checkSingleBand(int depth, int width, int numSteps)
+    {
+        // A band starts the shared random generator from the default seed.
+        Randomizer.reset();
+        Simulator simulator = new Simulator(depth, width);
+        simulator.setUnthrottled();
+        PartitionedSimulator partitioned = new PartitionedSimulator(depth, width, 1);
+        try {
+            for(int step = 0; step <= numSteps; step++) {
+                if(step > 0) {
+                    simulator.simulateOneStep();
+                    partitioned.simulateOneStep();
+                }
+                for(int tag = 0; tag < Species.getCount(); tag++) {
+                    int expected = simulator.getStats().getCount(tag);
+                    int actual = partitioned.getCount(tag);
+                    if(actual != expected) {
+                        System.out.println("Step " + step + ": "
+                                           + Species.getSpeciesClass(tag).getSimpleName()
+                                           + " " + actual + " instead of " + expected);
+                        return false;
+                    }
+                }
+            }
+            System.out.println("The populations were the same for " + numSteps + " steps.");
+            return true;
+        }
+        finally {
+            partitioned.close();
+        }
+    }
+
+    /**
+     * Stop the band processes.
+     */
+    public void close()
+    {
+        for(int i = 0; i < outs.length; i++) {
+            try {
+                outs[i].writeByte(FieldBand.STOP);
+                outs[i].flush();
+            }
+            catch(IOException e) {
+                // The band is already gone.
+            }
+        }
+        for(Process process : processes) {
+            try {
+                if(!process.waitFor(STOP_TIMEOUT, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            }
+            catch(InterruptedException e) {
+                process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Launch a process per band, wait for them to connect and tell
+     * each which rows it owns.
+     */
+    private void startBands(int bands) throws IOException
+    {
+        processes = new ArrayList<>();
+        ins = new DataInputStream[bands];
+        outs = new DataOutputStream[bands];
+        topEdges = new byte[bands][];
+        bottomEdges = new byte[bands][];
+        counts = new int[bands][];
+
+        try(ServerSocket server = new ServerSocket(0, bands, InetAddress.getLoopbackAddress())) {
+            String java = System.getProperty("java.home") + File.separator + "bin"
+                          + File.separator + "java";
+            for(int i = 0; i < bands; i++) {
+                ProcessBuilder builder = new ProcessBuilder(
+                    java, "-cp", System.getProperty("java.class.path"), "FieldBand",
+                    server.getInetAddress().getHostAddress(),
+                    String.valueOf(server.getLocalPort()), String.valueOf(i));
+                builder.inheritIO();
+                processes.add(builder.start());
+            }
+
+            for(int i = 0; i < bands; i++) {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+                int index = in.readInt();
+                ins[index] = in;
+                outs[index] = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            }
+        }
+
+        // Spread the rows as evenly as possible. All bands populate their
+        // rows from the seed a Simulator populates its field with. Each
+        // band steps from a seed of its own, the first band from the one
+        // a Simulator steps from.
+        long seed = Simulator.createPopulationSeeds().nextLong();
+        RandomSource stepSeeds = Simulator.createStepSeeds();
+        int firstRow = 0;
+        for(int i = 0; i < bands; i++) {
+            int rows = depth / bands + (i < depth % bands ? 1 : 0);
+            outs[i].writeInt(firstRow);
+            outs[i].writeInt(rows);
+            outs[i].writeInt(depth);
+            outs[i].writeInt(width);
+            outs[i].writeBoolean(field != null);
+            outs[i].writeLong(seed);
+            outs[i].writeLong(stepSeeds.nextLong());
+            outs[i].flush();
+            firstRow += rows;
+        }
+        for(int i = 0; i < bands; i++) {
+            readReport(i, field != null);
+        }
+    }
+
+    /**
+     * Run both rounds of a step on every band. Each round is first sent
+     * to all bands and then collected, so the bands work in parallel.
+     */
+    private void exchange() throws IOException
+    {
+        int bands = outs.length;
+        for(int i = 0; i < bands; i++) {
+            DataOutputStream out = outs[i];
+            out.writeByte(FieldBand.STEP);
+            out.writeBoolean(time.getIsDay());
+            out.writeUTF(weather.getCurrentWeather());
+            // The halo above is the bottom edge of the band above, and so on.
+            FieldBand.writeBlob(out, i > 0 ? bottomEdges[i - 1] : null);
+            FieldBand.writeBlob(out, i < bands - 1 ? topEdges[i + 1] : null);
+            out.flush();
+        }
+        byte[][] up = new byte[bands][];
+        byte[][] down = new byte[bands][];
+        for(int i = 0; i < bands; i++) {
+            up[i] = FieldBand.readBytes(ins[i]);
+            down[i] = FieldBand.readBytes(ins[i]);
+        }
+
+        boolean snapshot = field != null;
+        for(int i = 0; i < bands; i++) {
+            DataOutputStream out = outs[i];
+            out.writeByte(FieldBand.MERGE);
+            out.writeBoolean(snapshot);
+            FieldBand.writeBlob(out, i > 0 ? down[i - 1] : null);
+            FieldBand.writeBlob(out, i < bands - 1 ? up[i + 1] : null);
+            out.flush();
+        }
+        if(snapshot) {
+            field.clear();
+        }
+        for(int i = 0; i < bands; i++) {
+            readReport(i, snapshot);
+        }
+    }
+
+    /**
+     * Read the counts and edge rows of a band, and copy its actors into
+     * the whole field if a snapshot was asked for.
+     */
+    private void readReport(int band, boolean snapshot) throws IOException
+    {
+        DataInputStream in = ins[band];
+        counts[band] = new int[Species.getCount()];
+        for(int tag = 0; tag < counts[band].length; tag++) {
+            counts[band][tag] = in.readInt();
+        }
+        topEdges[band] = FieldBand.readBytes(in);
+        bottomEdges[band] = FieldBand.readBytes(in);
+
+        if(snapshot) {
+            DataInputStream all = new DataInputStream(
+                new ByteArrayInputStream(FieldBand.readBytes(in)));
+            int actors = all.readInt();
+            for(int i = 0; i < actors; i++) {
+                int[] header = ActorCodec.readHeader(all);
+                ActorCodec.create(all, header[0], field,
+                                  new Location(header[1], header[2]), false);
+            }
+        }
+    }
+
+    /**
+     * @return The number of individuals with the given species tag.
+     */
+    private int getCount(int tag)
+    {
+        int total = 0;
+        for(int[] band : counts) {
+            total += band[tag];
+        }
+        return total;
+    }
+
+    /**
+     * Update all existing views with the copy of the whole field.
+     */
+    private void updateViews()
+    {
+        for(SimulatorView view : views) {
+            view.showStatus(step, time.getIsDay(), field, weather.getCurrentWeather());
+        }
+    }
+
+    /**
+     * Use the same colors as the Simulator.
+     */
+    private void setColors(SimulatorView view)
+    {
+        for(Map.Entry<Class<?>, Color> entry : Simulator.getColors().entrySet()) {
+            view.setColor(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -1,3 +1,6 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -16,6 +19,15 @@ public abstract class Plants
     private Location location;
     // Is the plant infected.
     protected boolean isInfected;
+    // The step the Plants grew in; its age is the number of steps since.
+    private int birthStep;
+    // Whether the Plants is recorded in the statistics of the field, and
+    // the birth step and infection it is recorded with.
+    private boolean recorded;
+    private int recordedBirth;
+    private boolean recordedInfected;
+    // The id of the Plants's species in the Species registry.
+    private int speciesId;
 
     /**
      * Create a new Plants at location in field.
@@ -26,8 +38,10 @@ public abstract class Plants
     public Plants(Field field, Location location)
     {
         alive = true;
+        speciesId = Species.getId(getClass());
         this.field = field;
         setLocation(location);
+        birthStep = field.getStep();
         isInfected = false;
     }
 
@@ -40,6 +54,84 @@ public abstract class Plants
      */
     abstract public void act(List<Plants> newPlants, boolean time, String weather);
 
+    /**
+     * Plan what this Plants does in a step of the two-phase update.
+     * Unlike act, this must not change the field or any other actor:
+     * it only records what the Plants wants to do in the intent.
+     * @param intent The intent to fill in, with the Plants's random generator.
+     * @param time time - day or night.
+     * @param weather Current weather condition.
+     */
+    abstract protected void plan(Intent intent, boolean time, String weather);
+
+    /**
+     * Create a newly grown Plants of the same species.
+     * @param field The field to place the new Plants in.
+     * @param location Where to place the new Plants.
+     * @return The new Plants.
+     */
+    abstract protected Plants createYoung(Field field, Location location);
+
+    /**
+     * Write the individual state of this Plants (age, food level, ...)
+     * so that an equal Plants can be recreated in another field.
+     * @param out Where to write the state to.
+     */
+    abstract protected void writeState(DataOutput out) throws IOException;
+
+    /**
+     * Overwrite the individual state of this Plants with one written
+     * by writeState.
+     * @param in Where to read the state from.
+     */
+    abstract protected void readState(DataInput in) throws IOException;
+
+    /**
+     * @return The age of the Plants, in steps.
+     */
+    protected int getAge()
+    {
+        return field.getStep() - birthStep;
+    }
+
+    /**
+     * Set the age of the Plants, e.g. when it is created.
+     * @param age The age, in steps.
+     */
+    protected void setAge(int age)
+    {
+        birthStep = field.getStep() - age;
+    }
+
+    /**
+     * Bring the Plants's entry in the statistics of its field up to date
+     * with its birth and infection. Called once the Plants has been
+     * created or has acted; does nothing if neither changed, as the
+     * Plants merely got older.
+     */
+    protected void updateStats()
+    {
+        if(!alive || recorded && birthStep == recordedBirth && isInfected == recordedInfected) {
+            return;
+        }
+        ActorStats stats = field.getStats();
+        if(recorded) {
+            stats.remove(speciesId, recordedBirth, ActorStats.NEVER, recordedInfected, false);
+        }
+        stats.add(speciesId, birthStep, ActorStats.NEVER, isInfected, false);
+        recorded = true;
+        recordedBirth = birthStep;
+        recordedInfected = isInfected;
+    }
+
+    /**
+     * @return The id of the Plants's species in the Species registry.
+     */
+    protected int getSpeciesId()
+    {
+        return speciesId;
+    }
+
     /**
      * Check whether the Plants is alive or not.
      * @return true if the Plants is still alive.
@@ -54,9 +146,25 @@ public abstract class Plants
      * It is removed from the field.
      */
     protected void setDead()
+    {
+        setDead(EventBus.REMOVED);
+    }
+
+    /**
+     * Indicate that the Plants is no longer alive, and why.
+     * It is removed from the field.
+     * @param cause The cause of death, e.g. EventBus.EATEN.
+     */
+    protected void setDead(int cause)
     {
         alive = false;
         if(location != null) {
+            field.getEvents().death(speciesId, cause, location);
+            if(recorded) {
+                field.getStats().remove(speciesId, recordedBirth, ActorStats.NEVER,
+                                        recordedInfected, false);
+                recorded = false;
+            }
             field.clear(location);
             location = null;
             field = null;
@@ -0,0 +1,166 @@
+/**
+ * A bounded history of the population counts of any number of species.
+ * The counts are kept at several resolutions: level 0 holds the latest
+ * samples as they were added, and each bucket of level k+1 holds the
+ * minimum and maximum of two buckets of level k. Every level is a ring
+ * buffer of the same capacity, so the memory used is fixed, while the
+ * coarser levels reach back 2^k times further. Adding a sample costs a
+ * constant amount of work on average.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class PopulationHistory
+{
+    // The number of levels. The coarsest level covers 2^(LEVELS-1) samples per bucket.
+    public static final int LEVELS = 24;
+
+    // The number of species and the number of buckets kept per level.
+    private int species, capacity;
+    // The minimum and maximum counts of each bucket, per level:
+    // entry bucket * species + s is for species s.
+    private int[][] mins, maxs;
+    // The step of the first sample of each bucket, per level.
+    private int[][] steps;
+    // The number of buckets held and the next bucket to write, per level.
+    private int[] sizes, heads;
+    // The bucket being combined for each level, from two buckets of the level below.
+    private int[][] pendingMins, pendingMaxs;
+    private int[] pendingSteps, pendingCounts;
+
+    /**
+     * Create an empty history.
+     * @param species The number of species.
+     * @param capacity The number of buckets kept per level.
+     */
+    public PopulationHistory(int species, int capacity)
+    {
+        this.species = species;
+        this.capacity = capacity;
+        mins = new int[LEVELS][capacity * species];
+        maxs = new int[LEVELS][capacity * species];
+        steps = new int[LEVELS][capacity];
+        sizes = new int[LEVELS];
+        heads = new int[LEVELS];
+        pendingMins = new int[LEVELS][species];
+        pendingMaxs = new int[LEVELS][species];
+        pendingSteps = new int[LEVELS];
+        pendingCounts = new int[LEVELS];
+    }
+
+    /**
+     * Forget all samples.
+     */
+    public void clear()
+    {
+        for(int level = 0; level < LEVELS; level++) {
+            sizes[level] = 0;
+            heads[level] = 0;
+            pendingCounts[level] = 0;
+        }
+    }
+
+    /**
+     * Add the counts of a step.
+     * @param step The step the counts were taken at.
+     * @param counts The count of each species.
+     */
+    public void add(int step, int[] counts)
+    {
+        add(0, step, counts, counts);
+    }
+
+    /**
+     * @return The number of species.
+     */
+    public int getSpeciesCount()
+    {
+        return species;
+    }
+
+    /**
+     * @return The number of buckets held at a level.
+     */
+    public int getSize(int level)
+    {
+        return sizes[level];
+    }
+
+    /**
+     * Get the minimum count of a species in a bucket.
+     * @param level The level, 0 for single samples.
+     * @param age The bucket, 0 for the latest one.
+     * @param s The species.
+     * @return The minimum count.
+     */
+    public int getMin(int level, int age, int s)
+    {
+        return mins[level][index(level, age) * species + s];
+    }
+
+    /**
+     * Get the maximum count of a species in a bucket.
+     * @param level The level, 0 for single samples.
+     * @param age The bucket, 0 for the latest one.
+     * @param s The species.
+     * @return The maximum count.
+     */
+    public int getMax(int level, int age, int s)
+    {
+        return maxs[level][index(level, age) * species + s];
+    }
+
+    /**
+     * Get the step of the first sample in a bucket.
+     * @param level The level, 0 for single samples.
+     * @param age The bucket, 0 for the latest one.
+     * @return The step.
+     */
+    public int getStep(int level, int age)
+    {
+        return steps[level][index(level, age)];
+    }
+
+    /**
+     * Write a bucket to a level, and combine it into the next level.
+     */
+    private void add(int level, int step, int[] min, int[] max)
+    {
+        int head = heads[level];
+        System.arraycopy(min, 0, mins[level], head * species, species);
+        System.arraycopy(max, 0, maxs[level], head * species, species);
+        steps[level][head] = step;
+        heads[level] = (head + 1) % capacity;
+        if(sizes[level] < capacity) {
+            sizes[level]++;
+        }
+
+        int next = level + 1;
+        if(next < LEVELS) {
+            int[] pendingMin = pendingMins[next];
+            int[] pendingMax = pendingMaxs[next];
+            if(pendingCounts[next] == 0) {
+                System.arraycopy(min, 0, pendingMin, 0, species);
+                System.arraycopy(max, 0, pendingMax, 0, species);
+                pendingSteps[next] = step;
+                pendingCounts[next] = 1;
+            }
+            else {
+                for(int s = 0; s < species; s++) {
+                    pendingMin[s] = Math.min(pendingMin[s], min[s]);
+                    pendingMax[s] = Math.max(pendingMax[s], max[s]);
+                }
+                pendingCounts[next] = 0;
+                add(next, pendingSteps[next], pendingMin, pendingMax);
+            }
+        }
+    }
+
+    /**
+     * @return The ring buffer index of a bucket of a level.
+     */
+    private int index(int level, int age)
+    {
+        return (heads[level] - 1 - age + capacity) % capacity;
+    }
+}
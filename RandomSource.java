@@ -0,0 +1,320 @@
+import java.util.Random;
+
+/**
+ * A fast source of random numbers. It is a java.util.Random, so it can be
+ * used wherever one is expected, but the numbers come from a
+ * xoroshiro128++ generator (the JDK's Xoroshiro128PlusPlus) instead of
+ * the synchronised linear congruential one of java.util.Random. The
+ * generator is written out here: creating one through
+ * RandomGeneratorFactory is too slow for the generator made for every
+ * actor in every step of the two-phase update.
+ *
+ * The numbers are generated in blocks into a buffer per thread, so a draw
+ * is usually an array read. The first thread to draw gets the stream of
+ * the seed; other threads get further streams in the order they first
+ * draw. So a source used by one thread gives the same numbers for the
+ * same seed.
+ *
+ * A thread can also draw from a stream of its own seed for a while (see
+ * setThreadSeed), e.g. so that work split over threads gives the same
+ * numbers however the threads are scheduled. Such a thread takes no
+ * stream of the seed unless it draws without a seed of its own, so it
+ * does not change which streams the other threads get.
+ *
+ * A source drawn from by one part of the simulation at a time, e.g. the
+ * weather, may instead have a single stream that every thread draws
+ * from, so that its numbers do not depend on which thread draws first.
+ * The threads must then not draw at the same time.
+ *
+ * For probabilities that are tested often, compute a threshold once with
+ * threshold and test it with chance. This replaces nextDouble() <= p with
+ * a comparison of integers.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class RandomSource extends Random
+{
+    // The version of the serialised form, which Random requires.
+    private static final long serialVersionUID = 1L;
+    // The number of ints generated at a time, by default.
+    private static final int DEFAULT_BUFFER_SIZE = 256;
+    // 2^32, the number of values of a threshold.
+    private static final double THRESHOLD_SCALE = 4294967296.0;
+    // The golden ratio as a 64 bit number, to space out seeds.
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // The seed.
+    private long seed;
+    // The number of ints generated at a time.
+    private int bufferSize;
+    // The thread that drew first, and its buffer.
+    private Thread owner;
+    private Buffer ownerBuffer;
+    // The buffers of the other threads, created when first needed.
+    private ThreadLocal<Buffer> others;
+    // The number of streams handed out to threads.
+    private int streams;
+    // Whether all threads draw from the owner's buffer.
+    private boolean singleStream;
+
+    /**
+     * Create a source with a random seed.
+     */
+    public RandomSource()
+    {
+        this(new Random().nextLong());
+    }
+
+    /**
+     * Create a source with the given seed.
+     * @param seed The seed.
+     */
+    public RandomSource(long seed)
+    {
+        this(seed, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a source with the given seed and buffer size. A small buffer
+     * suits a source that only makes a few draws.
+     * @param seed The seed.
+     * @param bufferSize The number of ints generated at a time. Must be even.
+     */
+    public RandomSource(long seed, int bufferSize)
+    {
+        this(seed, bufferSize, false);
+    }
+
+    /**
+     * Create a source with the given seed and buffer size, and choose
+     * whether all threads draw from a single stream.
+     * @param seed The seed.
+     * @param bufferSize The number of ints generated at a time. Must be even.
+     * @param singleStream If true, every thread draws the next numbers of
+     *                     the stream of the seed, and no two threads may
+     *                     draw at the same time. If false, each thread
+     *                     draws from a stream of its own.
+     */
+    public RandomSource(long seed, int bufferSize, boolean singleStream)
+    {
+        super(0);
+        this.bufferSize = bufferSize;
+        this.singleStream = singleStream;
+        setSeed(seed);
+    }
+
+    /**
+     * Restart the numbers from a seed. This must not be called while
+     * other threads are drawing.
+     * @param seed The seed.
+     */
+    public synchronized void setSeed(long seed)
+    {
+        if(bufferSize == 0) {
+            // Called by the constructor of Random; the constructor of this
+            // class sets the seed again.
+            return;
+        }
+        this.seed = seed;
+        owner = null;
+        ownerBuffer = singleStream ? new Buffer(seed, bufferSize) : null;
+        others = null;
+        streams = 0;
+    }
+
+    /**
+     * Compute the threshold with which chance succeeds with a given
+     * probability.
+     * @param probability The probability, from 0 to 1.
+     * @return The threshold.
+     */
+    public static long threshold(double probability)
+    {
+        if(probability <= 0) {
+            return 0;
+        }
+        if(probability >= 1) {
+            return 1L << 32;
+        }
+        return (long) (probability * THRESHOLD_SCALE);
+    }
+
+    /**
+     * Test for an event with the probability of a threshold.
+     * @param threshold The threshold, as computed by threshold.
+     * @return true with the probability of the threshold.
+     */
+    public boolean chance(long threshold)
+    {
+        return (buffer().nextInt() & 0xFFFFFFFFL) < threshold;
+    }
+
+    /**
+     * @return The next random double from 0 (inclusive) to 1 (exclusive).
+     */
+    public double nextDouble()
+    {
+        Buffer buffer = buffer();
+        long bits = ((long) buffer.nextInt() << 32) | (buffer.nextInt() & 0xFFFFFFFFL);
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * @return The next random bits, as used by all other methods of Random.
+     */
+    protected int next(int bits)
+    {
+        return buffer().nextInt() >>> (32 - bits);
+    }
+
+    /**
+     * Let the current thread draw from a stream of the given seed, until
+     * clearThreadSeed is called. Other threads are not affected, and a
+     * thread that has not drawn yet does not take a stream of the seed.
+     * @param seed The seed of the stream.
+     */
+    public void setThreadSeed(long seed)
+    {
+        Buffer buffer = new Buffer(seed, bufferSize);
+        buffer.seeded = true;
+        buffer.previous = currentBuffer();
+        install(buffer);
+    }
+
+    /**
+     * Let the current thread go back to the stream it drew from before
+     * the last call to setThreadSeed, or to none if it had not drawn.
+     */
+    public void clearThreadSeed()
+    {
+        Buffer buffer = currentBuffer();
+        if(buffer != null && buffer.seeded) {
+            install(buffer.previous);
+        }
+    }
+
+    /**
+     * Make a buffer the one of the current thread.
+     * @param buffer The buffer, or null to leave the thread without one.
+     */
+    private void install(Buffer buffer)
+    {
+        if(singleStream || Thread.currentThread() == owner) {
+            ownerBuffer = buffer;
+        }
+        else if(buffer != null) {
+            threadBuffers().set(buffer);
+        }
+        else if(others != null) {
+            others.remove();
+        }
+    }
+
+    /**
+     * @return The buffer of the current thread, creating it with the next
+     *         stream if the thread has none.
+     */
+    private Buffer buffer()
+    {
+        Buffer buffer = currentBuffer();
+        return buffer != null ? buffer : newBuffer();
+    }
+
+    /**
+     * @return The buffer of the current thread, or null if it has none.
+     */
+    private Buffer currentBuffer()
+    {
+        if(singleStream || Thread.currentThread() == owner) {
+            return ownerBuffer;
+        }
+        ThreadLocal<Buffer> buffers = others;
+        return buffers != null ? buffers.get() : null;
+    }
+
+    /**
+     * @return The buffers of the threads other than the owner.
+     */
+    private synchronized ThreadLocal<Buffer> threadBuffers()
+    {
+        if(others == null) {
+            others = new ThreadLocal<>();
+        }
+        return others;
+    }
+
+    /**
+     * Create the buffer of the current thread, with the next stream.
+     * @return The buffer.
+     */
+    private synchronized Buffer newBuffer()
+    {
+        Buffer buffer = new Buffer(seed + streams * GOLDEN_GAMMA, bufferSize);
+        streams++;
+        if(owner == null) {
+            ownerBuffer = buffer;
+            owner = Thread.currentThread();
+        }
+        else {
+            threadBuffers().set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * The random numbers generated for one thread.
+     */
+    private static class Buffer
+    {
+        // The state of the generator.
+        private long s0, s1;
+        private final int[] values;
+        // The next value to use.
+        private int next;
+        // Whether the buffer was installed by setThreadSeed, and the
+        // buffer to go back to after it, or null.
+        private boolean seeded;
+        private Buffer previous;
+
+        Buffer(long seed, int size)
+        {
+            s0 = mix(seed);
+            s1 = mix(seed + GOLDEN_GAMMA);
+            if((s0 | s1) == 0) {
+                s1 = GOLDEN_GAMMA;
+            }
+            values = new int[size];
+            next = size;
+        }
+
+        /**
+         * @return The next random int, refilling the buffer when it is used up.
+         */
+        int nextInt()
+        {
+            if(next == values.length) {
+                for(int i = 0; i < values.length; i += 2) {
+                    long bits = Long.rotateLeft(s0 + s1, 17) + s0;
+                    long t = s1 ^ s0;
+                    s0 = Long.rotateLeft(s0, 49) ^ t ^ (t << 21);
+                    s1 = Long.rotateLeft(t, 28);
+                    values[i] = (int) bits;
+                    values[i + 1] = (int) (bits >>> 32);
+                }
+                next = 0;
+            }
+            return values[next++];
+        }
+
+        /**
+         * Scramble the bits of a seed (the SplitMix64 finaliser).
+         */
+        private static long mix(long z)
+        {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -1,52 +1,84 @@
-import java.util.Random;
-
-/**
- * Provide control over the randomization of the simulation. By using the shared, fixed-seed
- * randomizer, repeated runs will perform exactly the same (which helps with testing). Set
- * 'useShared' to false to get different random behaviour every time.
- *
- * @author Daniel Koch and Jakub Grzelak
- * @version 2020.02.23
- */
-public class Randomizer
-{
-    // The default seed for control of randomization.
-    private static final int SEED = 1111;
-    // A shared Random object, if required.
-    private static final Random rand = new Random(SEED);
-    // Determine whether a shared random generator is to be provided.
-    private static final boolean useShared = true;
-
-    /**
-     * Constructor for objects of class Randomizer
-     */
-    public Randomizer()
-    {
-    }
-
-    /**
-     * Provide a random generator.
-     * @return A random object.
-     */
-    public static Random getRandom()
-    {
-        if(useShared) {
-            return rand;
-        }
-        else {
-            return new Random();
-        }
-    }
-
-    /**
-     * Reset the randomization.
-     * This will have no effect if randomization is not through
-     * a shared Random generator.
-     */
-    public static void reset()
-    {
-        if(useShared) {
-            rand.setSeed(SEED);
-        }
-    }
-}
+/**
+ * Provide control over the randomization of the simulation. By using the shared, fixed-seed
+ * randomizer, repeated runs will perform exactly the same (which helps with testing). Set
+ * 'useShared' to false to get different random behaviour every time.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class Randomizer
+{
+    // The default seed for control of randomization.
+    private static final int SEED = 1111;
+    // A shared Random object, if required.
+    private static final RandomSource rand = new RandomSource(SEED);
+    // Determine whether a shared random generator is to be provided.
+    private static final boolean useShared = true;
+
+    /**
+     * Constructor for objects of class Randomizer
+     */
+    public Randomizer()
+    {
+    }
+
+    /**
+     * Provide a random generator.
+     * @return A random object.
+     */
+    public static RandomSource getRandom()
+    {
+        if(useShared) {
+            return rand;
+        }
+        else {
+            return new RandomSource();
+        }
+    }
+
+    /**
+     * Reset the randomization.
+     * This will have no effect if randomization is not through
+     * a shared Random generator.
+     */
+    public static void reset()
+    {
+        if(useShared) {
+            rand.setSeed(SEED);
+        }
+    }
+
+    /**
+     * Reset the randomization with a different seed, e.g. so that the
+     * bands of a partitioned field do not all draw the same numbers.
+     * This will have no effect if randomization is not through
+     * a shared Random generator.
+     * @param seed The seed to use instead of the default one.
+     */
+    public static void reset(long seed)
+    {
+        if(useShared) {
+            rand.setSeed(seed);
+        }
+    }
+
+    /**
+     * @return The default seed of the shared random generator.
+     */
+    public static int getSeed()
+    {
+        return SEED;
+    }
+
+    /**
+     * Provide the seed of a part of the simulation that draws from a
+     * random generator of its own, e.g. the weather, so that it never
+     * changes the numbers the actors draw from the shared one.
+     * @param name The name of the part, e.g. "weather".
+     * @return A seed derived from the default seed and the name.
+     */
+    public static long getSeed(String name)
+    {
+        return SEED + ((long) name.hashCode() << 32);
+    }
+}
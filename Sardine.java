@@ -1,6 +1,7 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
-import java.util.Random;
-import java.util.Iterator;
 
 
 /**
@@ -17,25 +18,19 @@ public class Sardine extends Animal
     // The age at which a Sardine can start to breed.
     private static final int BREEDING_AGE = 5;
     // The age to which a Sardine can live.
-    private static final int MAX_AGE = 10;
+    static final int MAX_AGE = 10;
     // The likelihood of a Sardine breeding.
     private static final double BREEDING_PROBABILITY = 0.15;
+    private static final long BREEDING_THRESHOLD = RandomSource.threshold(BREEDING_PROBABILITY);
     // The maximum number of births.
     private static final int MAX_LITTER_SIZE = 5;
     // The food value of a single seaweed. In effect, this is the
     // number of steps a Salmon can go before it has to eat again.
-    private static final int FOOD_VALUE = 8;
+    static final int FOOD_VALUE = 8;
     // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
+    private static final RandomSource rand = Randomizer.getRandom();
     // Survival probability after eating infected plant.
-    private static final double DEATH_CHANCE = 0.002;
-
-    // Individual characteristics (instance fields).
-
-    // The Sardine's age.
-    private int age;
-    // The Sardine's food level, which is increased by eating sardines and scubadivers.
-    private int foodLevel;
+    static final double DEATH_CHANCE = 0.002;
 
 
         /**
@@ -49,14 +44,12 @@ public class Sardine extends Animal
         public Sardine(boolean randomAge, Field field, Location location)
         {
             super(field, location);
-            age = 0;
             if(randomAge) {
-                age = rand.nextInt(MAX_AGE);
-                foodLevel = rand.nextInt(FOOD_VALUE);
+                setAge(rand.nextInt(MAX_AGE));
+                setFoodLevel(rand.nextInt(FOOD_VALUE));
             }
             else {
-                age = 0;
-                foodLevel = FOOD_VALUE;
+                setFoodLevel(FOOD_VALUE);
             }
         }
 
@@ -69,8 +62,6 @@ public class Sardine extends Animal
          */
         public void act(List<Animal> newSardines, boolean time, String weather)
         {
-            incrementAge();
-            incrementHunger();
             if(isAlive()) {
                 // Move towards a source of food if found.
                 Location newLocation = findFood();
@@ -89,33 +80,54 @@ public class Sardine extends Animal
                     }
                     else {
                         // Overcrowding.
-                        setDead();
+                        setDead(EventBus.OVERCROWDING);
                     }
                 }
             }
         }
 
         /**
-         * Increase the age.
-         * This could result in the Sardine's death.
+         * Plan what the Sardine does in a step of the two-phase update:
+         * the same as act, but recorded in the intent.
+         * @param intent The intent to fill in.
+         * @param time Time of a day: day or night.
+         * @param weather Current weather condition.
          */
-        private void incrementAge()
+        protected void plan(Intent intent, boolean time, String weather)
         {
-            age++;
-            if(age > MAX_AGE) {
-                setDead();
+            RandomSource random = intent.getRandom();
+            Field field = getField();
+            Location location = getLocation();
+            boolean moves = weather != "freezing";
+            int food = field.getNeighbourMask(location, Species.getDiet(getSpeciesId()));
+            if(food != 0) {
+                intent.setEat(field.neighbourAt(location, Field.randomBit(food, random)), moves);
+            }
+            if(moves) {
+                int births = breed(random);
+                if(weather == "stormy") {
+                    births += breed(random);
+                }
+                intent.setBirths(births, field);
+                if(food == 0) {
+                    int free = field.getFreeMask(location);
+                    if(free != 0) {
+                        intent.setMove(field.neighbourAt(location, Field.randomBit(free, random)));
+                    }
+                    else {
+                        // Overcrowding.
+                        intent.setDies(EventBus.OVERCROWDING);
+                    }
+                }
             }
         }
 
         /**
-         * Make this Shark more hungry. This could result in the Shark's death.
+         * @return A new born Sardine.
          */
-        private void incrementHunger()
+        protected Animal createYoung(Field field, Location location)
         {
-            foodLevel--;
-            if(foodLevel <= 0) {
-                setDead();
-            }
+            return new Sardine(false, field, location);
         }
 
         /**
@@ -129,7 +141,7 @@ public class Sardine extends Animal
             // Get a list of adjacent free locations.
             Field field = getField();
             List<Location> free = field.getFreeAdjacentLocations(getLocation());
-            int births = breed();
+            int births = breed(rand);
             for(int b = 0; b < births && free.size() > 0; b++) {
                 Location loc = free.remove(0);
                 Sardine young = new Sardine(false, field, loc);
@@ -140,13 +152,14 @@ public class Sardine extends Animal
         /**
          * Generate a number representing the number of births,
          * if it can breed.
+         * @param random The random generator to use.
          * @return The number of births (may be zero).
          */
-        private int breed()
+        private int breed(RandomSource random)
         {
             int births = 0;
-            if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-                births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+            if(canBreed() && random.chance(BREEDING_THRESHOLD)) {
+                births = random.nextInt(MAX_LITTER_SIZE) + 1;
             }
             return births;
         }
@@ -157,38 +170,28 @@ public class Sardine extends Animal
          */
         private boolean canBreed()
         {
-            return age >= BREEDING_AGE;
+            return getAge() >= BREEDING_AGE;
         }
 
         /**
-         * Look for seaweed adjacent to the current location.
-         * Only the first live Seaweed is eaten.
-         * @return Where food was found, or null if it wasn't.
+         * Write the Sardine's age, food level and infection state.
+         * @param out Where to write the state to.
          */
-        private Location findFood()
+        protected void writeState(DataOutput out) throws IOException
         {
-            Field field = getField();
-            List<Location> adjacent = field.adjacentLocations(getLocation());
-            Iterator<Location> it = adjacent.iterator();
-            while(it.hasNext()) {
-                Location where = it.next();
-                Object plant = field.getObjectAt(where);
-                if(plant instanceof Seaweed) {
-                    Seaweed seaweed = (Seaweed) plant;
-                    if(seaweed.isAlive() && seaweed.getInfection()) {
-                        isInfected = true;
-                        if(rand.nextDouble() <= DEATH_CHANCE){
-                            setDead();
-                        }
-                        seaweed.setDead();
-                    }
-                    else if(seaweed.isAlive()){
-                        seaweed.setDead();
-                        foodLevel = FOOD_VALUE;
-                        return where;
-                    }
-                }
-            }
-            return null;
+            out.writeInt(getAge());
+            out.writeInt(getFoodLevel());
+            out.writeBoolean(isInfected);
+        }
+
+        /**
+         * Overwrite the Sardine's state with one written by writeState.
+         * @param in Where to read the state from.
+         */
+        protected void readState(DataInput in) throws IOException
+        {
+            setAge(in.readInt());
+            setFoodLevel(in.readInt());
+            isInfected = in.readBoolean();
         }
     }
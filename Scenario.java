@@ -0,0 +1,245 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.imageio.ImageIO;
+
+/**
+ * Reads and writes the initial state of a field: which species is in
+ * each cell. A scenario is a grid with one byte per cell, row by row,
+ * holding 0 for an empty cell or the Species id plus one.
+ *
+ * Scenarios are stored either as a binary grid (a header with a magic
+ * number, the depth and the width, then the bytes of the grid) or as an
+ * indexed-colour PNG image with one pixel per cell. In an image, the
+ * species are told apart by the colours of the views (see
+ * Simulator.addView); pixels of any other colour are empty cells.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class Scenario
+{
+    // The first int of a binary grid file.
+    private static final int MAGIC = 0x4F43454E;
+    // The colour of empty cells in the images written.
+    private static final Color EMPTY_COLOR = Color.cyan;
+
+    /**
+     * Read a scenario, as a PNG image if the file name ends in .png and
+     * as a binary grid otherwise.
+     * @param fileName The file to read.
+     * @param depth The depth of the field the scenario is for.
+     * @param width The width of the field the scenario is for.
+     * @param colors The colour of each species in an image.
+     * @return The grid of the scenario.
+     */
+    public static byte[] read(String fileName, int depth, int width, Map<Class<?>, Color> colors)
+    {
+        try {
+            byte[] grid;
+            if(isImage(fileName)) {
+                grid = readImage(new File(fileName), depth, width, colors);
+            }
+            else {
+                grid = readGrid(new File(fileName), depth, width);
+            }
+            return grid;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not read the scenario " + fileName, e);
+        }
+    }
+
+    /**
+     * Write the species in a field as a scenario, as a PNG image if the
+     * file name ends in .png and as a binary grid otherwise.
+     * @param field The field to write.
+     * @param fileName The file to write.
+     * @param colors The colour of each species in an image.
+     */
+    public static void write(Field field, String fileName, Map<Class<?>, Color> colors)
+    {
+        byte[] grid = toGrid(field);
+        try {
+            if(isImage(fileName)) {
+                writeImage(grid, field.getDepth(), field.getWidth(), new File(fileName), colors);
+            }
+            else {
+                writeGrid(grid, field.getDepth(), field.getWidth(), new File(fileName));
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not write the scenario " + fileName, e);
+        }
+    }
+
+    /**
+     * @return The grid of the species in a field.
+     */
+    public static byte[] toGrid(Field field)
+    {
+        int width = field.getWidth();
+        byte[] grid = new byte[field.getDepth() * width];
+        for(int row = 0; row < field.getDepth(); row++) {
+            for(int col = 0; col < width; col++) {
+                Object actor = field.getObjectAt(row, col);
+                if(actor != null) {
+                    grid[row * width + col] = (byte) (Species.getId(actor) + 1);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Read a binary grid.
+     */
+    private static byte[] readGrid(File file, int depth, int width) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Not a scenario grid: " + file);
+            }
+            checkSize(file, in.readInt(), in.readInt(), depth, width);
+            byte[] grid = new byte[depth * width];
+            in.readFully(grid);
+            for(byte cell : grid) {
+                if(cell < 0 || cell > Species.getCount()) {
+                    throw new IOException("Unknown species " + cell + " in " + file);
+                }
+            }
+            return grid;
+        }
+    }
+
+    /**
+     * Write a binary grid.
+     */
+    private static void writeGrid(byte[] grid, int depth, int width, File file) throws IOException
+    {
+        try(DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(depth);
+            out.writeInt(width);
+            out.write(grid);
+        }
+    }
+
+    /**
+     * Read an image. Indexed images are mapped through their palette,
+     * so each colour is only looked up once.
+     */
+    private static byte[] readImage(File file, int depth, int width, Map<Class<?>, Color> colors)
+        throws IOException
+    {
+        BufferedImage image = ImageIO.read(file);
+        if(image == null) {
+            throw new IOException("Not an image: " + file);
+        }
+        checkSize(file, image.getHeight(), image.getWidth(), depth, width);
+
+        // The cell value of each colour.
+        Map<Integer, Byte> cells = new HashMap<>();
+        for(Map.Entry<Class<?>, Color> entry : colors.entrySet()) {
+            int id = Species.getId(entry.getKey());
+            if(id >= 0) {
+                cells.put(entry.getValue().getRGB() & 0xFFFFFF, (byte) (id + 1));
+            }
+        }
+
+        byte[] grid = new byte[depth * width];
+        if(image.getColorModel() instanceof IndexColorModel) {
+            IndexColorModel palette = (IndexColorModel) image.getColorModel();
+            byte[] paletteCells = new byte[palette.getMapSize()];
+            for(int index = 0; index < paletteCells.length; index++) {
+                paletteCells[index] = cells.getOrDefault(palette.getRGB(index) & 0xFFFFFF, (byte) 0);
+            }
+            int[] indices = new int[width];
+            for(int row = 0; row < depth; row++) {
+                image.getRaster().getSamples(0, row, width, 1, 0, indices);
+                for(int col = 0; col < width; col++) {
+                    grid[row * width + col] = paletteCells[indices[col]];
+                }
+            }
+        }
+        else {
+            int[] rgb = new int[width];
+            for(int row = 0; row < depth; row++) {
+                image.getRGB(0, row, width, 1, rgb, 0, width);
+                for(int col = 0; col < width; col++) {
+                    grid[row * width + col] = cells.getOrDefault(rgb[col] & 0xFFFFFF, (byte) 0);
+                }
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Write an indexed-colour image: index 0 for empty cells, then the
+     * Species id plus one, as in the grid.
+     */
+    private static void writeImage(byte[] grid, int depth, int width, File file,
+                                   Map<Class<?>, Color> colors)
+        throws IOException
+    {
+        int size = Species.getCount() + 1;
+        byte[] reds = new byte[size];
+        byte[] greens = new byte[size];
+        byte[] blues = new byte[size];
+        for(int index = 0; index < size; index++) {
+            Color color = index == 0 ? EMPTY_COLOR
+                                     : colors.get(Species.getSpeciesClass(index - 1));
+            if(color != null) {
+                reds[index] = (byte) color.getRed();
+                greens[index] = (byte) color.getGreen();
+                blues[index] = (byte) color.getBlue();
+            }
+        }
+        IndexColorModel palette = new IndexColorModel(8, size, reds, greens, blues);
+        BufferedImage image = new BufferedImage(width, depth, BufferedImage.TYPE_BYTE_INDEXED,
+                                                palette);
+        WritableRaster raster = image.getRaster();
+        int[] indices = new int[width];
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                indices[col] = grid[row * width + col];
+            }
+            raster.setSamples(0, row, width, 1, 0, indices);
+        }
+        ImageIO.write(image, "png", file);
+    }
+
+    /**
+     * Check that a scenario fits the field.
+     */
+    private static void checkSize(File file, int fileDepth, int fileWidth, int depth, int width)
+        throws IOException
+    {
+        if(fileDepth != depth || fileWidth != width) {
+            throw new IOException("The scenario " + file + " is " + fileDepth + "x" + fileWidth
+                                  + ", the field is " + depth + "x" + width);
+        }
+    }
+
+    /**
+     * @return Whether a file name is that of an image.
+     */
+    private static boolean isImage(String fileName)
+    {
+        return fileName.toLowerCase().endsWith(".png");
+    }
+}
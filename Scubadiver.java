@@ -1,6 +1,8 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
 import java.util.Iterator;
-import java.util.Random;
 
 /**
  * A simple model of a Scubadiver.
@@ -9,25 +11,24 @@ import java.util.Random;
  * @author Daniel Koch and Jakub Grzelak
  * @version 2020.02.23 (2)
  */
-public class Scubadiver extends Animal
+public class Scubadiver extends Animal implements Gendered
 {
     // Characteristics shared by all Scubadivers (class variables).
 
     // The age at which a Scubadiver can start to breed.
     private static final int BREEDING_AGE = 2;
     // The age to which a Scubadiver can live.
-    private static final int MAX_AGE = 20;
+    static final int MAX_AGE = 20;
     // The likelihood of a Scubadiver breeding.
     private static final double BREEDING_PROBABILITY = 0.4;
+    private static final long BREEDING_THRESHOLD = RandomSource.threshold(BREEDING_PROBABILITY);
     // The maximum number of births.
     private static final int MAX_LITTER_SIZE = 6;
     // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
+    private static final RandomSource rand = Randomizer.getRandom();
 
     // Individual characteristics (instance fields).
 
-    // The Scubadiver's age.
-    private int age;
     // The Scubadiver's gender
     private boolean isMale;
 
@@ -43,19 +44,20 @@ public class Scubadiver extends Animal
     public Scubadiver(boolean randomAge, Field field, Location location)
     {
         super(field, location);
-        age = 0;
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
+            setAge(rand.nextInt(MAX_AGE));
         }
-        Random rd = new Random();
-        this.isMale = rd.nextBoolean();
+        this.isMale = rand.nextBoolean();
+        // Place again so that the field records the gender.
+        field.place(this, location);
     }
 
     /**
      * This is what the Scubadiver does most of the time - it runs
      * around. Sometimes it will breed or die of old age.
      *
-     *  Scubadiver only moves and breeds when the weather is sunny.
+     *  Scubadiver only moves and breeds by day when the weather is sunny;
+     *  it is dormant, and does not act, otherwise (see Species).
      *
      * @param newScubadivers A list to return newly born Scubadivers.
      * @param time Time - day or night
@@ -63,8 +65,7 @@ public class Scubadiver extends Animal
      */
     public void act(List<Animal> newScubadivers, boolean time, String weather)
     {
-        incrementAge();
-        if(isAlive() && time == true && weather == "sunny") {
+        if(isAlive()) {
             giveBirth(newScubadivers);
             // Try to move into a free location.
             Location newLocation = getField().freeAdjacentLocation(getLocation());
@@ -73,21 +74,41 @@ public class Scubadiver extends Animal
             }
             else {
                 // Overcrowding.
-                setDead();
+                setDead(EventBus.OVERCROWDING);
             }
         }
     }
 
     /**
-     * Increase the age.
-     * This could result in the Scubadiver's death.
+     * Plan what the Scubadiver does in a step of the two-phase update:
+     * the same as act, but recorded in the intent.
+     * @param intent The intent to fill in.
+     * @param time Time - day or night
+     * @param weather Current weather condition.
      */
-    private void incrementAge()
+    protected void plan(Intent intent, boolean time, String weather)
     {
-        age++;
-        if(age > MAX_AGE) {
-            setDead();
+        Field field = getField();
+        if(genderCheck()) {
+            intent.setBirths(breed(intent.getRandom()), field);
         }
+        int free = field.getFreeMask(getLocation());
+        if(free != 0) {
+            int bit = Field.randomBit(free, intent.getRandom());
+            intent.setMove(field.neighbourAt(getLocation(), bit));
+        }
+        else {
+            // Overcrowding.
+            intent.setDies(EventBus.OVERCROWDING);
+        }
+    }
+
+    /**
+     * @return A new born Scubadiver.
+     */
+    protected Animal createYoung(Field field, Location location)
+    {
+        return new Scubadiver(false, field, location);
     }
 
     /**
@@ -106,7 +127,7 @@ public class Scubadiver extends Animal
             // Get a list of adjacent free locations.
             Field field = getField();
             List<Location> free = field.getFreeAdjacentLocations(getLocation());
-            int births = breed();
+            int births = breed(rand);
             for(int b = 0; b < births && free.size() > 0; b++) {
                 Location loc = free.remove(0);
                 Scubadiver young = new Scubadiver(false, field, loc);
@@ -121,31 +142,20 @@ public class Scubadiver extends Animal
      */
     private boolean genderCheck()
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if (animal instanceof Scubadiver){
-                Scubadiver scuba = (Scubadiver) animal;
-                if(this.isMale!=scuba.getGender())
-                    return true;
-            }
-        }
-        return false;
+        return getField().getMateMask(getLocation(), getSpeciesId(), isMale) != 0;
     }
 
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param random The random generator to use.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(RandomSource random)
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && random.chance(BREEDING_THRESHOLD)) {
+            births = random.nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -156,7 +166,7 @@ public class Scubadiver extends Animal
      */
     private boolean canBreed()
     {
-        return age >= BREEDING_AGE;
+        return getAge() >= BREEDING_AGE;
     }
 
     /**
@@ -166,4 +176,28 @@ public class Scubadiver extends Animal
     {
        return isMale;
     }
+
+    /**
+     * Write the Scubadiver's age, gender and infection state.
+     * @param out Where to write the state to.
+     */
+    protected void writeState(DataOutput out) throws IOException
+    {
+        out.writeInt(getAge());
+        out.writeBoolean(isMale);
+        out.writeBoolean(isInfected);
+    }
+
+    /**
+     * Overwrite the Scubadiver's state with one written by writeState.
+     * @param in Where to read the state from.
+     */
+    protected void readState(DataInput in) throws IOException
+    {
+        setAge(in.readInt());
+        isMale = in.readBoolean();
+        isInfected = in.readBoolean();
+        // Place again so that the field records the gender.
+        getField().place(this, getLocation());
+    }
 }
@@ -1,5 +1,7 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
-import java.util.Random;
 
 
 /**
@@ -17,17 +19,14 @@ public class Seaweed extends Plants
     private static final int BREEDING_AGE = 5;
     // The likelihood of a Seaweed breeding.
     private static final double BREEDING_PROBABILITY = 0.4;
+    private static final long BREEDING_THRESHOLD = RandomSource.threshold(BREEDING_PROBABILITY);
     // The maximum number of births.
     private static final int MAX_LITTER_SIZE = 9;
     // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
+    private static final RandomSource rand = Randomizer.getRandom();
     // Probability that the seaweed is infected.
     private static final double INFECTION_PROBABILITY = 0.0005;
-
-    // Individual characteristics (instance fields).
-
-    // The Seaweed's age.
-    private int age;
+    private static final long INFECTION_THRESHOLD = RandomSource.threshold(INFECTION_PROBABILITY);
 
     /**
      * Create a new Seaweed. A Seaweed may be created with age
@@ -42,11 +41,10 @@ public class Seaweed extends Plants
     public Seaweed(boolean randomAge, Field field, Location location)
     {
         super(field, location);
-        age = 0;
         if(randomAge) {
-            age = rand.nextInt(5);
+            setAge(rand.nextInt(5));
         }
-        if(rand.nextDouble() <= INFECTION_PROBABILITY) {
+        if(rand.chance(INFECTION_THRESHOLD)) {
             isInfected = true;
         }
     }
@@ -60,21 +58,31 @@ public class Seaweed extends Plants
      */
     public void act(List<Plants> newSeaweeds, boolean time, String weather)
     {
-        incrementAge();
-
-        // Seaweed breeds only when it's sunny weather.
-        if(isAlive() && weather == "sunny") {
+        // Seaweed breeds only when it's sunny weather; it is dormant,
+        // and does not act, otherwise (see Species).
+        if(isAlive()) {
             giveBirth(newSeaweeds);
         }
     }
 
     /**
-     * Increase the age.
-     * This cannot result in the Seaweed's death.
+     * Plan what the Seaweed does in a step of the two-phase update:
+     * the same as act, but recorded in the intent.
+     * @param intent The intent to fill in.
+     * @param time: day or night.
+     * @param weather Current weather condition.
+     */
+    protected void plan(Intent intent, boolean time, String weather)
+    {
+        intent.setBirths(breed(intent.getRandom()), getField());
+    }
+
+    /**
+     * @return A newly grown Seaweed.
      */
-    private void incrementAge()
+    protected Plants createYoung(Field field, Location location)
     {
-        age++;
+        return new Seaweed(false, field, location);
     }
 
     /**
@@ -88,7 +96,7 @@ public class Seaweed extends Plants
         // Get a list of adjacent free locations.
         Field field = getField();
         List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
+        int births = breed(rand);
         for(int b = 0; b < births && free.size() > 0; b++) {
             Location loc = free.remove(0);
             Seaweed young = new Seaweed(false, field, loc);
@@ -99,13 +107,14 @@ public class Seaweed extends Plants
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param random The random generator to use.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(RandomSource random)
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && random.chance(BREEDING_THRESHOLD)) {
+            births = random.nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -116,6 +125,26 @@ public class Seaweed extends Plants
      */
     private boolean canBreed()
     {
-        return age >= BREEDING_AGE;
+        return getAge() >= BREEDING_AGE;
+    }
+
+    /**
+     * Write the Seaweed's age and infection state.
+     * @param out Where to write the state to.
+     */
+    protected void writeState(DataOutput out) throws IOException
+    {
+        out.writeInt(getAge());
+        out.writeBoolean(isInfected);
+    }
+
+    /**
+     * Overwrite the Seaweed's state with one written by writeState.
+     * @param in Where to read the state from.
+     */
+    protected void readState(DataInput in) throws IOException
+    {
+        setAge(in.readInt());
+        isInfected = in.readBoolean();
     }
 }
@@ -1,6 +1,7 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
-import java.util.Iterator;
-import java.util.Random;
 
 
 /**
@@ -17,22 +18,21 @@ public class Shark extends Animal
     // The age at which a Shark can start to breed.
     private static final int BREEDING_AGE = 20;
     // The age to which a Shark can live.
-    private static final int MAX_AGE = 200;
+    static final int MAX_AGE = 200;
     // The likelihood of a Shark breeding.
     private static final double BREEDING_PROBABILITY = 0.2;
+    private static final long BREEDING_THRESHOLD = RandomSource.threshold(BREEDING_PROBABILITY);
     // The maximum number of births.
     private static final int MAX_LITTER_SIZE = 2;
     // The food value of a single sardine or a single scubadiver. In effect, this is the
     // number of steps a Shark can go before it has to eat again.
-    private static final int FOOD_VALUE = 15;
+    static final int FOOD_VALUE = 15;
+    // How many cells away a Shark sees sardines and scubadivers, unless
+    // changed with Species.setPerceptionRadius.
+    static final int PERCEPTION_RADIUS = 6;
     // A shared random number generator to control breeding.
-    private static final Random rand = Randomizer.getRandom();
+    private static final RandomSource rand = Randomizer.getRandom();
 
-    // Individual characteristics (instance fields).
-    // The Shark's age.
-    private int age;
-    // The Shark's food level, which is increased by eating sardines and scubadivers.
-    private int foodLevel;
 
     /**
      * Create a Shark. A Shark can be created as a new born (age zero
@@ -46,12 +46,11 @@ public class Shark extends Animal
     {
         super(field, location);
         if(randomAge) {
-            age = rand.nextInt(MAX_AGE);
-            foodLevel = rand.nextInt(FOOD_VALUE);
+            setAge(rand.nextInt(MAX_AGE));
+            setFoodLevel(rand.nextInt(FOOD_VALUE));
         }
         else {
-            age = 0;
-            foodLevel = FOOD_VALUE;
+            setFoodLevel(FOOD_VALUE);
         }
     }
 
@@ -65,15 +64,15 @@ public class Shark extends Animal
      */
     public void act(List<Animal> newSharks, boolean time, String weather)
     {
-        incrementAge();
-        incrementHunger();
-        if(isAlive() && weather!="freezing") {
+        if(isAlive()) {
             giveBirth(newSharks);
             // Move towards a source of food if found.
             Location newLocation = findFood();
             if(newLocation == null) {
-                // No food found - try to move to a free location.
-                newLocation = getField().freeAdjacentLocation(getLocation());
+                // No food found - try to move towards food in sight.
+                newLocation = getField().freeAdjacentLocationTowards(
+                    getLocation(), Species.getPerceptionRadius(getSpeciesId()),
+                    Species.getDiet(getSpeciesId()));
             }
             // See if it was possible to move.
             if(newLocation != null) {
@@ -81,64 +80,48 @@ public class Shark extends Animal
             }
             else {
                 // Overcrowding.
-                setDead();
+                setDead(EventBus.OVERCROWDING);
             }
         }
     }
 
     /**
-     * Increase the age. This could result in the Shark's death.
+     * Plan what the Shark does in a step of the two-phase update:
+     * the same as act, but recorded in the intent.
+     * @param intent The intent to fill in.
+     * @param time Time: day or night.
+     * @param weather Current weather condition.
      */
-    private void incrementAge()
+    protected void plan(Intent intent, boolean time, String weather)
     {
-        age++;
-        if(age > MAX_AGE) {
-            setDead();
+        RandomSource random = intent.getRandom();
+        Field field = getField();
+        Location location = getLocation();
+        intent.setBirths(breed(random), field);
+        int food = field.getNeighbourMask(location, Species.getDiet(getSpeciesId()));
+        if(food != 0) {
+            intent.setEat(field.neighbourAt(location, Field.randomBit(food, random)), true);
         }
-    }
-
-    /**
-     * Make this Shark more hungry. This could result in the Shark's death.
-     */
-    private void incrementHunger()
-    {
-        foodLevel--;
-        if(foodLevel <= 0) {
-            setDead();
+        else {
+            Location newLocation = field.freeAdjacentLocationTowards(
+                location, Species.getPerceptionRadius(getSpeciesId()), random,
+                Species.getDiet(getSpeciesId()));
+            if(newLocation != null) {
+                intent.setMove(newLocation);
+            }
+            else {
+                // Overcrowding.
+                intent.setDies(EventBus.OVERCROWDING);
+            }
         }
     }
 
     /**
-     * Look for sardines and scubadivers adjacent to the current location.
-     * Only the first live Sardine or Scubadiver is eaten.
-     * @return Where food was found, or null if it wasn't.
+     * @return A new born Shark.
      */
-    private Location findFood()
+    protected Animal createYoung(Field field, Location location)
     {
-        Field field = getField();
-        List<Location> adjacent = field.adjacentLocations(getLocation());
-        Iterator<Location> it = adjacent.iterator();
-        while(it.hasNext()) {
-            Location where = it.next();
-            Object animal = field.getObjectAt(where);
-            if(animal instanceof Sardine) {
-                Sardine sardine = (Sardine) animal;
-                if(sardine.isAlive()) {
-                    sardine.setDead();
-                    foodLevel = FOOD_VALUE;
-                    return where;
-                }
-            }
-            else if(animal instanceof Scubadiver) {
-                Scubadiver scubadiver = (Scubadiver) animal;
-                if(scubadiver.isAlive()) {
-                    scubadiver.setDead();
-                    foodLevel = FOOD_VALUE;
-                    return where;
-                }
-            }
-        }
-        return null;
+        return new Shark(false, field, location);
     }
 
     /**
@@ -152,7 +135,7 @@ public class Shark extends Animal
         // Get a list of adjacent free locations.
         Field field = getField();
         List<Location> free = field.getFreeAdjacentLocations(getLocation());
-        int births = breed();
+        int births = breed(rand);
         for(int b = 0; b < births && free.size() > 0; b++) {
             Location loc = free.remove(0);
             Shark young = new Shark(false, field, loc);
@@ -163,13 +146,14 @@ public class Shark extends Animal
     /**
      * Generate a number representing the number of births,
      * if it can breed.
+     * @param random The random generator to use.
      * @return The number of births (may be zero).
      */
-    private int breed()
+    private int breed(RandomSource random)
     {
         int births = 0;
-        if(canBreed() && rand.nextDouble() <= BREEDING_PROBABILITY) {
-            births = rand.nextInt(MAX_LITTER_SIZE) + 1;
+        if(canBreed() && random.chance(BREEDING_THRESHOLD)) {
+            births = random.nextInt(MAX_LITTER_SIZE) + 1;
         }
         return births;
     }
@@ -179,7 +163,28 @@ public class Shark extends Animal
      */
     private boolean canBreed()
     {
-        return age >= BREEDING_AGE;
+        return getAge() >= BREEDING_AGE;
     }
 
+    /**
+     * Write the Shark's age, food level and infection state.
+     * @param out Where to write the state to.
+     */
+    protected void writeState(DataOutput out) throws IOException
+    {
+        out.writeInt(getAge());
+        out.writeInt(getFoodLevel());
+        out.writeBoolean(isInfected);
+    }
+
+    /**
+     * Overwrite the Shark's state with one written by writeState.
+     * @param in Where to read the state from.
+     */
+    protected void readState(DataInput in) throws IOException
+    {
+        setAge(in.readInt());
+        setFoodLevel(in.readInt());
+        isInfected = in.readBoolean();
+    }
 }
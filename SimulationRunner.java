@@ -0,0 +1,324 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a simulation on a thread of its own, controlled from other
+ * threads (e.g. the user interface or a script) while it runs.
+ *
+ * The controls (pause, resume, step, setRate and stop) do not touch the
+ * simulation. Each puts a command into a lock-free queue and wakes the
+ * simulation thread, which carries the commands out between two steps.
+ * So the field is only ever changed by the simulation thread, and a
+ * control never waits for a step to finish. The thread is woken without
+ * being interrupted, so the wait that paces the steps and any file
+ * written during a step are never cut short; the commands are carried
+ * out once the step in progress is done.
+ *
+ * The simulation thread is a daemon thread, so it does not keep the
+ * program alive. A program that only runs the simulation must wait for
+ * it, e.g. with awaitPause, and should call stop when done.
+ *
+ * The runner starts paused. It measures how many steps it runs per
+ * second and, while it runs a given number of steps, how long it will
+ * take to finish them.
+ *
+ * Each step of the Simulator draws from a random stream of its own, so
+ * a run gives the same results on the runner's thread as when simulate
+ * is called directly (see checkRunner).
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class SimulationRunner
+{
+    // The number of steps left to run when running without an end.
+    private static final long FOREVER = Long.MAX_VALUE;
+
+    // The simulation run.
+    private Simulator simulator;
+    // The thread running the simulation.
+    private Thread thread;
+    // The commands waiting to be carried out by the simulation thread.
+    private Queue<Runnable> commands;
+    // The number of commands sent and carried out, to wait for the
+    // commands sent so far.
+    private AtomicLong sent;
+    private volatile long done;
+    // Whether commands were sent since the simulation thread last looked.
+    private volatile boolean woken;
+    // Signalled by the simulation thread when it pauses or ends.
+    private final Object pauseSignal = new Object();
+    // Whether the simulation thread has ended.
+    private volatile boolean ended;
+
+    // The state below is only changed by the simulation thread.
+
+    // The number of steps left to run before pausing, or FOREVER.
+    private volatile long remaining;
+    // Whether stop has been carried out.
+    private volatile boolean stopped;
+    // The number of steps run so far.
+    private volatile long stepsRun;
+    // The measured steps per second.
+    private volatile double throughput;
+    // Whether the views show the last step run.
+    private boolean shown;
+
+    /**
+     * Create a runner for a simulation and start its thread, paused.
+     * @param simulator The simulation to run. It must not be run by any
+     *                  other thread while the runner runs.
+     */
+    public SimulationRunner(Simulator simulator)
+    {
+        this.simulator = simulator;
+        commands = new ConcurrentLinkedQueue<>();
+        sent = new AtomicLong();
+        shown = true;
+        thread = new Thread(this::run, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop running steps after the step in progress.
+     */
+    public void pause()
+    {
+        send(() -> remaining = 0);
+    }
+
+    /**
+     * Run steps until paused or stopped, or until the simulation ceases
+     * to be viable.
+     */
+    public void resume()
+    {
+        send(() -> startRun(FOREVER));
+    }
+
+    /**
+     * Run a number of steps, then pause.
+     * @param count The number of steps.
+     */
+    public void step(int count)
+    {
+        if(count < 0) {
+            throw new IllegalArgumentException("Negative step count: " + count);
+        }
+        send(() -> startRun(count));
+    }
+
+    /**
+     * Set how many steps are run per second.
+     * @param stepsPerSecond The target rate, or 0 to run as fast as possible.
+     */
+    public void setRate(double stepsPerSecond)
+    {
+        if(stepsPerSecond < 0) {
+            throw new IllegalArgumentException("Negative step rate: " + stepsPerSecond);
+        }
+        send(() -> simulator.setStepRate(stepsPerSecond));
+    }
+
+    /**
+     * End the simulation thread after the step in progress. The runner
+     * cannot be used afterwards.
+     */
+    public void stop()
+    {
+        send(() -> stopped = true);
+    }
+
+    /**
+     * Wait until the commands sent so far have been carried out and the
+     * runner has paused or stopped.
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitPause() throws InterruptedException
+    {
+        long target = sent.get();
+        synchronized(pauseSignal) {
+            while(!ended && (done < target || (remaining != 0 && !stopped))) {
+                pauseSignal.wait();
+            }
+        }
+    }
+
+    /**
+     * @return Whether the runner is not running any steps.
+     */
+    public boolean isPaused()
+    {
+        return remaining == 0 || stopped;
+    }
+
+    /**
+     * @return Whether the simulation thread has ended.
+     */
+    public boolean isStopped()
+    {
+        return !thread.isAlive();
+    }
+
+    /**
+     * @return The number of steps run since the runner was created.
+     */
+    public long getStepsRun()
+    {
+        return stepsRun;
+    }
+
+    /**
+     * @return The number of steps run per second, as last measured.
+     */
+    public double getThroughput()
+    {
+        return throughput;
+    }
+
+    /**
+     * @return The estimated number of seconds until the steps asked for
+     *         are run: 0 when paused, infinite when running without an
+     *         end or before a rate has been measured.
+     */
+    public double getEta()
+    {
+        long left = remaining;
+        if(left == 0 || stopped) {
+            return 0;
+        }
+        if(left == FOREVER || throughput == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return left / throughput;
+    }
+
+    /**
+     * Check that a simulation run by a runner gives the same results as
+     * one run by calling simulate: run both from the default seed for a
+     * number of steps and compare the population of every species. The
+     * first difference is printed.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param numSteps The number of steps to run.
+     * @return true if the populations were the same.
+     * @throws InterruptedException If the thread is interrupted while
+     *                              waiting for the runner.
+     */
+    public static boolean checkRunner(int depth, int width, int numSteps)
+        throws InterruptedException
+    {
+        Randomizer.reset();
+        Simulator direct = new Simulator(depth, width);
+        direct.setUnthrottled();
+        direct.simulate(numSteps);
+
+        Randomizer.reset();
+        Simulator simulator = new Simulator(depth, width);
+        SimulationRunner runner = new SimulationRunner(simulator);
+        try {
+            runner.setRate(0);
+            runner.step(numSteps);
+            runner.awaitPause();
+        }
+        finally {
+            runner.stop();
+        }
+        for(int tag = 0; tag < Species.getCount(); tag++) {
+            int expected = direct.getStats().getCount(tag);
+            int actual = simulator.getStats().getCount(tag);
+            if(actual != expected) {
+                System.out.println(Species.getSpeciesClass(tag).getSimpleName() + " "
+                                   + actual + " instead of " + expected);
+                return false;
+            }
+        }
+        System.out.println("The populations were the same after " + numSteps + " steps.");
+        return true;
+    }
+
+    /**
+     * Queue a command for the simulation thread and wake it.
+     */
+    private void send(Runnable command)
+    {
+        sent.incrementAndGet();
+        commands.add(command);
+        // Wakes the thread if it waits for a command.
+        woken = true;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Start running a number of steps.
+     */
+    private void startRun(long count)
+    {
+        if(remaining == 0) {
+            simulator.startRun();
+        }
+        remaining = count;
+    }
+
+    /**
+     * The loop of the simulation thread: carry out the commands, then
+     * run a step if there are steps to run, else wait for a command.
+     */
+    private void run()
+    {
+        try {
+            while(!stopped) {
+                // Commands sent from now on wake the thread again.
+                woken = false;
+                Runnable command;
+                while((command = commands.poll()) != null) {
+                    command.run();
+                    done++;
+                }
+                if(stopped) {
+                    break;
+                }
+                if(remaining > 0 && !simulator.isViable()) {
+                    remaining = 0;
+                }
+                if(remaining == 0) {
+                    if(!shown) {
+                        simulator.updateViews();
+                        shown = true;
+                    }
+                    signalPause();
+                    while(!woken) {
+                        LockSupport.park(this);
+                    }
+                    continue;
+                }
+                shown = simulator.runStep();
+                stepsRun++;
+                throughput = simulator.getStepRate();
+                if(remaining != FOREVER) {
+                    remaining--;
+                }
+            }
+            if(!shown) {
+                simulator.updateViews();
+            }
+        }
+        finally {
+            ended = true;
+            signalPause();
+        }
+    }
+
+    /**
+     * Wake the threads waiting in awaitPause, to look at the state again.
+     */
+    private void signalPause()
+    {
+        synchronized(pauseSignal) {
+            pauseSignal.notifyAll();
+        }
+    }
+}
@@ -1,8 +1,16 @@
-import java.util.Random;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
 import java.awt.Color;
+import java.awt.GraphicsEnvironment;
 
 /**
  * A simple predator-prey simulator, based on a rectangular field
@@ -19,6 +27,11 @@ public class Simulator
     // The default depth of the grid.
     private static final int DEFAULT_DEPTH = 60;
 
+    // The default number of steps to run per second.
+    private static final double DEFAULT_STEPS_PER_SECOND = 5;
+    // The default number of times per second the views are redrawn.
+    private static final double DEFAULT_FRAMES_PER_SECOND = 30;
+
     // The probability that a shark will be created in any given grid position.
     private static final double SHARK_CREATION_PROBABILITY = 0.01;
     // The probability that a orca will be created in any given grid position.
@@ -31,6 +44,42 @@ public class Simulator
     private static final double SCUBADIVER_CREATION_PROBABILITY = 0.02;
     // The probability that a seaweed will be created in any given grid position.
     private static final double SEAWEED_CREATION_PROBABILITY = 0.2;
+    // The thresholds of a single draw that choose the species of a grid
+    // position, by Species id: the first species whose threshold is above
+    // the draw is created. They give each species the same probability as
+    // trying the probabilities above one after the other.
+    private static final long[] CREATION_THRESHOLDS = new long[Species.getCount()];
+    // The least number of rows populated by one task.
+    private static final int TILE_ROWS = 32;
+    // The number of ints the generator of the population seeds draws at a time.
+    private static final int SEED_BUFFER_SIZE = 16;
+
+    // The colour of each species in the views and in scenario images.
+    private static final Map<Class<?>, Color> COLORS = new LinkedHashMap<>();
+
+    static {
+        double[] probabilities = new double[Species.getCount()];
+        probabilities[Species.ORCA] = ORCA_CREATION_PROBABILITY;
+        probabilities[Species.SHARK] = SHARK_CREATION_PROBABILITY;
+        probabilities[Species.SCUBADIVER] = SCUBADIVER_CREATION_PROBABILITY;
+        probabilities[Species.SALMON] = SALMON_CREATION_PROBABILITY;
+        probabilities[Species.SARDINE] = SARDINE_CREATION_PROBABILITY;
+        probabilities[Species.SEAWEED] = SEAWEED_CREATION_PROBABILITY;
+        double cumulative = 0;
+        double untried = 1;
+        for(int id = 0; id < probabilities.length; id++) {
+            cumulative += untried * probabilities[id];
+            untried *= 1 - probabilities[id];
+            CREATION_THRESHOLDS[id] = RandomSource.threshold(cumulative);
+        }
+
+        COLORS.put(Sardine.class, Color.YELLOW);
+        COLORS.put(Salmon.class, Color.ORANGE);
+        COLORS.put(Scubadiver.class, Color.RED);
+        COLORS.put(Shark.class, Color.GRAY);
+        COLORS.put(Orca.class, Color.BLACK);
+        COLORS.put(Seaweed.class, Color.GREEN);
+    }
 
     // List of animals in the field.
     private List<Animal> animals;
@@ -46,6 +95,36 @@ public class Simulator
     private Time time = new Time(true);
     // Creates object Weather stating the weather conditions.
     private Weather weather = new Weather();
+    // The time of day and weather of every step worked out in advance, or
+    // null to change them step by step with time and weather.
+    private EnvironmentTimeline environment;
+    // Steps the actors in two phases, or null to let them act in list order.
+    private SynchronousStepper synchronousStepper;
+    // Spreads the infection by contact between animals, or null if it
+    // only spreads by eating.
+    private Epidemic epidemic;
+    // Every how many steps the actors are sorted by the Morton index of
+    // their cells, or 0 to leave them in the order they were born in.
+    private int spatialOrderInterval;
+    // Paces the steps and the redrawing of the views.
+    private FramePacer pacer;
+    // Statistics to decide whether the simulation is viable.
+    private FieldStats stats;
+    // Where the statistics of the actors are written after every step, or null.
+    private PrintWriter statsLog;
+    // Where pictures of the field are saved, or null, and every how many
+    // steps they are saved.
+    private ImageExporter imageExporter;
+    private int imageInterval;
+    // The species in each cell at the start (see Scenario), or null to
+    // populate the field at random.
+    private byte[] scenario;
+    // Draws the seed of the population at every reset.
+    private RandomSource populationSeeds = createPopulationSeeds();
+    // Draws the seed of the steps at every reset, and the seed drawn:
+    // each step draws from the stream of this seed plus its number.
+    private RandomSource stepSeeds = createStepSeeds();
+    private long stepSeed;
 
     /**
      * Construct a simulation field with default size.
@@ -63,42 +142,104 @@ public class Simulator
      */
     public Simulator(int depth, int width)
     {
-        if(width <= 0 || depth <= 0) {
+        this(depth, width, 1);
+    }
+
+    /**
+     * Create a simulation of an ocean with several layers, one under the
+     * other (see Field). The species keep to the depths they prefer.
+     *
+     * The views and the pictures show the surface only, and say so; the
+     * counts include all layers. The regional weather covers all layers
+     * under a block, and the events record no layer. A step costs about
+     * as much as one of a flat field of as many cells, so volumes of up
+     * to some 100x100x10 cells run at interactive rates, while one of
+     * 500x500x50 takes seconds per step.
+     * @param depth Depth of the field. Must be greater than zero.
+     * @param width Width of the field. Must be greater than zero.
+     * @param layers The number of layers, 1 for a flat field. Must be
+     *               greater than zero.
+     */
+    public Simulator(int depth, int width, int layers)
+    {
+        if(width <= 0 || depth <= 0 || layers <= 0) {
             System.out.println("The dimensions must be greater than zero.");
             System.out.println("Using default values.");
             depth = DEFAULT_DEPTH;
             width = DEFAULT_WIDTH;
+            layers = 1;
         }
 
         animals = new ArrayList<>();
         plants = new ArrayList<>();
-        field = new Field(depth, width);
+        field = new Field(depth, width, layers);
 
         views = new ArrayList<>();
+        pacer = new FramePacer(DEFAULT_STEPS_PER_SECOND, DEFAULT_FRAMES_PER_SECOND);
+        stats = new FieldStats();
 
-        // Create a view of the state of each location in the field.
-        SimulatorView view = new GridView(depth, width);
-        view.setColor(Sardine.class, Color.YELLOW);
-        view.setColor(Salmon.class, Color.ORANGE);
-        view.setColor(Scubadiver.class, Color.RED);
-        view.setColor(Shark.class, Color.GRAY);
-        view.setColor(Orca.class, Color.BLACK);
-        view.setColor(Seaweed.class, Color.GREEN);
-        views.add(view);
+        // Create a view of the state of each location in the field,
+        // unless there is no display (see addView for a WebView).
+        if(!GraphicsEnvironment.isHeadless()) {
+            addView(new GridView(depth, width));
+            addView(new GraphView(500, 150, 500));
+        }
 
-        view = new GraphView(500, 150, 500);
-        view.setColor(Sardine.class, Color.YELLOW);
-        view.setColor(Salmon.class, Color.ORANGE);
-        view.setColor(Scubadiver.class, Color.RED);
-        view.setColor(Shark.class, Color.GRAY);
-        view.setColor(Orca.class, Color.BLACK);
-        view.setColor(Seaweed.class, Color.GREEN);
+        // Setup a valid starting point.
+        reset();
+    }
+
+    /**
+     * Add a view of the simulation, e.g. a WebView on a host without a
+     * display.
+     * @param view The view to add.
+     */
+    public void addView(SimulatorView view)
+    {
+        for(Map.Entry<Class<?>, Color> entry : COLORS.entrySet()) {
+            view.setColor(entry.getKey(), entry.getValue());
+        }
         views.add(view);
+    }
 
-        // Setup a valid starting point.
+    /**
+     * @return The colour of each species in the views, the pictures and
+     *         scenario images, shared by all simulations.
+     */
+    static Map<Class<?>, Color> getColors()
+    {
+        return Collections.unmodifiableMap(COLORS);
+    }
+
+    /**
+     * Start the simulation from a scenario instead of a random field, and
+     * reset it. The scenario is a binary grid or, if the file name ends in
+     * .png, an image with one pixel per cell in the colours of the views
+     * (see Scenario).
+     * @param fileName The scenario, or null to go back to a random field.
+     */
+    public void loadScenario(String fileName)
+    {
+        if(fileName == null) {
+            scenario = null;
+        }
+        else {
+            scenario = Scenario.read(fileName, field.getDepth(), field.getWidth(), COLORS);
+        }
         reset();
     }
 
+    /**
+     * Save the current state of the field as a scenario, as an indexed
+     * colour image if the file name ends in .png and as a binary grid
+     * otherwise.
+     * @param fileName The file to write.
+     */
+    public void saveScenario(String fileName)
+    {
+        Scenario.write(field, fileName, COLORS);
+    }
+
     /**
      * Run the simulation from its current state for a reasonably long period,
      * (4000 steps).
@@ -115,12 +256,76 @@ public class Simulator
      */
     public void simulate(int numSteps)
     {
-        for(int step = 1; step <= numSteps && views.get(0).isViable(field); step++) {
-            simulateOneStep();
-            delay(200);   // uncomment this to run more slowly
+        startRun();
+        boolean shown = true;
+        for(int step = 1; step <= numSteps && isViable(); step++) {
+            shown = runStep();
+        }
+        if(!shown) {
+            updateViews();
         }
     }
 
+    /**
+     * Start pacing a run of steps from now.
+     */
+    void startRun()
+    {
+        pacer.start();
+    }
+
+    /**
+     * Run the next step of a run: advance, wait until the next step is
+     * due and redraw the views if a frame is due.
+     * @return Whether the views were redrawn.
+     */
+    boolean runStep()
+    {
+        advance();
+        pacer.stepDone();
+        // Only redraw as often as the frame rate allows.
+        boolean shown = pacer.frameDue();
+        if(shown) {
+            updateViews();
+        }
+        return shown;
+    }
+
+    /**
+     * @return The number of steps run per second, as last measured.
+     */
+    public double getStepRate()
+    {
+        return pacer.getStepRate();
+    }
+
+    /**
+     * Set how many steps simulate runs per second.
+     * @param stepsPerSecond The target rate, or 0 to run as fast as possible.
+     */
+    public void setStepRate(double stepsPerSecond)
+    {
+        pacer.setStepsPerSecond(stepsPerSecond);
+    }
+
+    /**
+     * Let simulate run steps as fast as possible.
+     */
+    public void setUnthrottled()
+    {
+        pacer.setStepsPerSecond(0);
+    }
+
+    /**
+     * Set how many times per second the views are redrawn while simulate
+     * runs. Steps in between are not shown.
+     * @param framesPerSecond The target rate. Must be greater than zero.
+     */
+    public void setFrameRate(double framesPerSecond)
+    {
+        pacer.setFramesPerSecond(framesPerSecond);
+    }
+
     /**
      * Run the simulation from its current state for a single step.
      * Controls time of a day.
@@ -130,20 +335,267 @@ public class Simulator
      */
     public void simulateOneStep()
     {
+        advance();
+        updateViews();
+    }
+
+    /**
+     * Advance the simulation by a single step without updating the views.
+     */
+    private void advance()
+    {
+        String previousWeather = getWeather();
         step++;
 
-        // controls time (day or night).
-        time.timeCheck();
+        if(environment == null) {
+            // controls time (day or night).
+            time.timeCheck();
 
-        // controls weather conditions.
-        weather.weatherCheck();
+            // controls weather conditions.
+            weather.weatherCheck();
+        }
+        field.setStep(step);
+        if(getWeather() != previousWeather) {
+            field.getEvents().weatherChange(getWeather());
+        }
+        if(field.getWeatherMap() != null) {
+            field.getWeatherMap().step(getWeather());
+        }
 
+        // Let predators see their prey as it was at the start of the step.
+        field.updateDensity();
+        if(spatialOrderInterval > 0 && step % spatialOrderInterval == 0) {
+            MortonOrder.sort(animals);
+            MortonOrder.sort(plants);
+        }
+        // Draw from a stream of the step, so that the step gives the same
+        // numbers whichever thread runs it (e.g. a SimulationRunner's).
+        RandomSource rand = Randomizer.getRandom();
+        rand.setThreadSeed(stepSeed + step);
+        try {
+            if(synchronousStepper != null) {
+                synchronousStepper.step(field, animals, plants, step, isDay(), getWeather());
+            }
+            else {
+                actAll(field, animals, plants, isDay(), getWeather());
+            }
+            if(epidemic != null) {
+                epidemic.step(field, animals);
+            }
+        }
+        finally {
+            rand.clearThreadSeed();
+        }
+        if(statsLog != null) {
+            field.getStats().writeRow(statsLog, step);
+        }
+        if(imageExporter != null && step % imageInterval == 0) {
+            imageExporter.export(field, step);
+        }
+    }
+
+    /**
+     * @return Whether it is day in the current step.
+     */
+    private boolean isDay()
+    {
+        return environment != null ? environment.isDay(step) : time.getIsDay();
+    }
+
+    /**
+     * @return The weather in the current step.
+     */
+    private String getWeather()
+    {
+        return environment != null ? environment.getWeather(step) : weather.getCurrentWeather();
+    }
+
+    /**
+     * Take the time of day and the weather of each step from a timeline
+     * worked out in advance, e.g. to give several simulations the same
+     * weather, or let them change step by step at random again.
+     * @param environment The timeline, which may be shared with other
+     *                    simulations, or null.
+     */
+    public void setEnvironment(EnvironmentTimeline environment)
+    {
+        this.environment = environment;
+    }
+
+    /**
+     * Choose whether the weather varies across the field (see
+     * WeatherMap): each block of 32x32 cells has its own, and fronts of
+     * the simulation's weather move across the field from the west.
+     * Each actor acts in the weather of its block.
+     * @param regional If true, the weather varies across the field. If
+     *                 false, it is the same everywhere.
+     */
+    public void setRegionalWeather(boolean regional)
+    {
+        if(regional) {
+            field.setWeatherMap(new WeatherMap(field.getDepth(), field.getWidth(),
+                                               Randomizer.getSeed(), getWeather()));
+        }
+        else {
+            field.setWeatherMap(null);
+        }
+    }
+
+    /**
+     * @return The bus of the events of the simulation: births, deaths
+     *         by cause, predation, infections and weather changes.
+     *         Subscribe to it to read them.
+     */
+    public EventBus getEvents()
+    {
+        return field.getEvents();
+    }
+
+    /**
+     * @return The statistics of the living animals and plants: counts,
+     *         infection, genders, ages and food levels per species.
+     */
+    public ActorStats getStats()
+    {
+        return field.getStats();
+    }
+
+    /**
+     * Write the statistics of the animals and plants (see getStats) to a
+     * file after every step, as comma separated values.
+     * @param fileName The file to write to, or null to stop writing.
+     */
+    public void setStatsLog(String fileName)
+    {
+        if(statsLog != null) {
+            statsLog.close();
+            statsLog = null;
+        }
+        if(fileName != null) {
+            try {
+                statsLog = new PrintWriter(new FileWriter(fileName));
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException("Could not write the statistics to " + fileName, e);
+            }
+            field.getStats().writeHeader(statsLog);
+            field.getStats().writeRow(statsLog, step);
+        }
+    }
+
+    /**
+     * Save a picture of the field as a PNG file every few steps, in the
+     * colors of the views (see ImageExporter). The files are written in
+     * the background and named after the step, e.g. step-000120.png.
+     * Of a field of several layers, the pictures show the surface.
+     * @param directory The directory to write to, or null to stop saving
+     *                  pictures once those asked for are written.
+     * @param interval Every how many steps a picture is saved.
+     * @param cellSize The number of pixels along the side of a cell.
+     */
+    public void setImageExport(String directory, int interval, int cellSize)
+    {
+        if(imageExporter != null) {
+            imageExporter.close();
+            imageExporter = null;
+        }
+        if(directory != null) {
+            if(interval < 1) {
+                throw new IllegalArgumentException("Interval must be positive: " + interval);
+            }
+            imageExporter = new ImageExporter(directory, cellSize, COLORS);
+            imageInterval = interval;
+        }
+    }
+
+    /**
+     * Choose how the animals and plants are updated in each step.
+     * @param synchronous If true, every actor plans its step against the
+     *                    state at the start of the step and the plans are
+     *                    settled together, independent of the order of the
+     *                    actors (see SynchronousStepper). If false, the
+     *                    actors act one after the other.
+     */
+    public void setSynchronousUpdate(boolean synchronous)
+    {
+        if(synchronous) {
+            synchronousStepper = new SynchronousStepper(Randomizer.getSeed());
+        }
+        else {
+            synchronousStepper = null;
+        }
+    }
+
+    /**
+     * Choose whether to sort the actors now and then by the Morton index
+     * of their cells (see MortonOrder), so that neighbouring actors act
+     * one after the other. This speeds up large fields, whose cells do
+     * not fit in the cache. When the actors act in list order, it also
+     * changes the course of the simulation, as the order does.
+     * @param interval Sort every this many steps; 0 to keep the actors
+     *                 in the order they were born in.
+     */
+    public void setSpatialOrder(int interval)
+    {
+        if(interval < 0) {
+            throw new IllegalArgumentException("Negative interval: " + interval);
+        }
+        spatialOrderInterval = interval;
+    }
+
+    /**
+     * Choose whether the infection also spreads by contact between
+     * neighbouring animals, with incubation and recovery (see Epidemic).
+     * It always spreads by eating infected prey.
+     * @param contact Whether the infection spreads by contact.
+     */
+    public void setContactInfection(boolean contact)
+    {
+        if(contact) {
+            epidemic = new Epidemic();
+        }
+        else {
+            epidemic = null;
+        }
+    }
+
+    /**
+     * Let every animal and plant act once, removing the dead ones and
+     * adding the newborns to the lists afterwards. First the animals
+     * whose time has come die of old age or hunger, all at once. Actors
+     * of species that are dormant in this day phase and weather do
+     * nothing.
+     * @param field The field of the actors, at the step to act in.
+     * @param animals The animals to act.
+     * @param plants The plants to act.
+     * @param isDay Whether it is day or night.
+     * @param weather Current weather condition.
+     */
+    static void actAll(Field field, List<Animal> animals, List<Plants> plants,
+                       boolean isDay, String weather)
+    {
+        for(Animal animal : field.getDeathCalendar().takeDue(field.getStep())) {
+            if(animal.isAlive()) {
+                animal.expire();
+            }
+        }
         // Provide space for newborn animals.
         List<Animal> newAnimals = new ArrayList<>();
-        // Let all animals act.
+        // Let all animals act, in the weather of their regions, if their
+        // species has something to do in it.
         for(Iterator<Animal> it = animals.iterator(); it.hasNext(); ) {
             Animal animal = it.next();
-            animal.act(newAnimals, time.getIsDay(), weather.getCurrentWeather());
+            String local = animal.isAlive() ? field.getWeatherAt(animal.getLocation(), weather)
+                                            : weather;
+            if(animal.isAlive() && Species.isActive(animal.getSpeciesId(), isDay, local)) {
+                int born = newAnimals.size();
+                animal.act(newAnimals, isDay, local);
+                for(int i = born; i < newAnimals.size(); i++) {
+                    publishBirth(newAnimals.get(i), newAnimals.get(i).getField(),
+                                 newAnimals.get(i).getLocation());
+                }
+                animal.updateStats();
+            }
             if(! animal.isAlive()) {
                 it.remove();
             }
@@ -154,18 +606,38 @@ public class Simulator
         // Let all plants act.
         for(Iterator<Plants> it = plants.iterator(); it.hasNext(); ) {
             Plants plant = it.next();
-            plant.act(newPlants, time.getIsDay(), weather.getCurrentWeather());
+            String local = plant.isAlive() ? field.getWeatherAt(plant.getLocation(), weather)
+                                           : weather;
+            if(plant.isAlive() && Species.isActive(plant.getSpeciesId(), isDay, local)) {
+                int born = newPlants.size();
+                plant.act(newPlants, isDay, local);
+                for(int i = born; i < newPlants.size(); i++) {
+                    publishBirth(newPlants.get(i), newPlants.get(i).getField(),
+                                 newPlants.get(i).getLocation());
+                }
+                plant.updateStats();
+            }
             if(! plant.isAlive()) {
                 it.remove();
             }
         }
 
-        // Add the newly born animals to the main lists.
+        // Record the newborns in the statistics and add them to the main lists.
+        newAnimals.forEach(Animal::updateStats);
+        newPlants.forEach(Plants::updateStats);
         animals.addAll(newAnimals);
         // Add the newly grown plants to the main lists.
         plants.addAll(newPlants);
-        // Updates the view
-        updateViews();
+    }
+
+    /**
+     * Publish the birth of a newborn, if it is still alive.
+     */
+    private static void publishBirth(Object newborn, Field field, Location location)
+    {
+        if(location != null) {
+            field.getEvents().birth(Species.getId(newborn), location);
+        }
     }
 
     /**
@@ -185,58 +657,172 @@ public class Simulator
         time.timeReset();
         // Resets weather.
         weather.weatherReset();
+        if(field.getWeatherMap() != null) {
+            field.getWeatherMap().fill(getWeather());
+        }
     }
 
     /**
      * Update all existing views.
      */
-    private void updateViews()
+    void updateViews()
     {
         for (SimulatorView view : views) {
-            view.showStatus(step, time.getIsDay(), field, weather.getCurrentWeather());
+            view.showStatus(step, isDay(), field, getWeather());
+            view.showStepRate(pacer.getStepRate());
         }
     }
 
     /**
-     * Randomly populate the field with Animals and Plants.
+     * Determine whether the simulation should continue to run.
+     * The counts are taken afresh, as the views are not updated every step.
+     * @return true If there is more than one species alive.
+     */
+    boolean isViable()
+    {
+        stats.reset();
+        return stats.isViable(field);
+    }
+
+    /**
+     * Populate the field with Animals and Plants, from the scenario if
+     * there is one and at random otherwise.
      * Animals (Orca, Shark, Salmon, Sardine, Scubadiver).
      * Plants (Seaweed).
      */
     private void populate()
     {
-        Random rand = Randomizer.getRandom();
         field.clear();
-        for(int row = 0; row < field.getDepth(); row++) {
-            for(int col = 0; col < field.getWidth(); col++) {
-                if(rand.nextDouble() <= ORCA_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Orca orca = new Orca(true, field, location);
-                    animals.add(orca);
-                }
-                else if(rand.nextDouble() <= SHARK_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Shark shark = new Shark(true, field, location);
-                    animals.add(shark);
+        populate(field, 0, field.getLayers() * field.getDepth(), 0, animals, plants,
+                 scenario, populationSeeds.nextLong());
+        stepSeed = stepSeeds.nextLong();
+    }
+
+    /**
+     * @return A generator of the seeds with which the field is populated,
+     *         the same for every simulation started afresh.
+     */
+    static RandomSource createPopulationSeeds()
+    {
+        return new RandomSource(Randomizer.getSeed("population"), SEED_BUFFER_SIZE, true);
+    }
+
+    /**
+     * @return A generator of the seeds of the streams the steps draw
+     *         from, the same for every simulation started afresh.
+     */
+    static RandomSource createStepSeeds()
+    {
+        return new RandomSource(Randomizer.getSeed("steps"), SEED_BUFFER_SIZE, true);
+    }
+
+    /**
+     * Populate the given rows of a field with Animals and Plants. Used for
+     * the whole field as well as for a single band of a partitioned field.
+     * The rows of a field of several layers are numbered on from one layer
+     * to the next, and each species is only created at the depths it
+     * prefers.
+     *
+     * The rows are split into tiles of the whole field. Each tile draws
+     * from a stream of the seed plus its index, and the actors of the
+     * tiles are added to the lists in row order, so the field is the same
+     * however the tiles are scheduled, and a band that starts at a tile
+     * populates its rows like the whole field does. A tile starts at a
+     * cell that begins a word of the field's bitboards, so if the rows of
+     * a band start at a word too, the tiles are populated in parallel.
+     * The shared stream the actors draw from is left as it was.
+     * @param field The field to populate.
+     * @param firstRow The first row to populate.
+     * @param lastRow The row after the last one to populate.
+     * @param rowOffset The row of the whole field of row 0 of the field,
+     *                  0 unless the field is a band.
+     * @param animals A list to receive the created animals.
+     * @param plants A list to receive the created plants.
+     * @param scenario The species in each cell of the surface (see
+     *                 Scenario), or null to choose them at random. The
+     *                 layers below the surface are populated at random.
+     * @param seed The seed of the population (see createPopulationSeeds).
+     */
+    static void populate(Field field, int firstRow, int lastRow, int rowOffset,
+                         List<Animal> animals, List<Plants> plants, byte[] scenario, long seed)
+    {
+        RandomSource rand = Randomizer.getRandom();
+        int width = field.getWidth();
+        // The rows of a tile, a multiple of the rows that fill whole words.
+        int wordRows = 64 / gcd(width, 64);
+        int tileRows = (TILE_ROWS + wordRows - 1) / wordRows * wordRows;
+        int firstTile = (firstRow + rowOffset) / tileRows;
+        int tiles = lastRow > firstRow ? (lastRow + rowOffset - 1) / tileRows - firstTile + 1 : 0;
+
+        List<List<Animal>> tileAnimals = new ArrayList<>();
+        List<List<Plants>> tilePlants = new ArrayList<>();
+        for(int tile = 0; tile < tiles; tile++) {
+            tileAnimals.add(new ArrayList<>());
+            tilePlants.add(new ArrayList<>());
+        }
+        IntStream tileStream = IntStream.range(0, tiles);
+        if((long) rowOffset * width % 64 == 0) {
+            tileStream = tileStream.parallel();
+        }
+        field.beginBulkUpdate();
+        try {
+            tileStream.forEach(tile -> {
+                int index = firstTile + tile;
+                int top = Math.max(index * tileRows - rowOffset, firstRow);
+                int bottom = Math.min((index + 1) * tileRows - rowOffset, lastRow);
+                rand.setThreadSeed(seed + index);
+                try {
+                    populateTile(field, top, bottom, tileAnimals.get(tile), tilePlants.get(tile),
+                                 scenario, rand);
                 }
-                else if(rand.nextDouble() <= SCUBADIVER_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Scubadiver scubadiver = new Scubadiver(true, field, location);
-                    animals.add(scubadiver);
+                finally {
+                    rand.clearThreadSeed();
                 }
-                else if(rand.nextDouble() <= SALMON_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Salmon salmon = new Salmon(true, field, location);
-                    animals.add(salmon);
+            });
+        }
+        finally {
+            field.endBulkUpdate();
+        }
+        for(int tile = 0; tile < tiles; tile++) {
+            tileAnimals.get(tile).forEach(Animal::updateStats);
+            tilePlants.get(tile).forEach(Plants::updateStats);
+            animals.addAll(tileAnimals.get(tile));
+            plants.addAll(tilePlants.get(tile));
+        }
+    }
+
+    /**
+     * Populate the given rows of a field, in the current thread.
+     */
+    private static void populateTile(Field field, int firstRow, int lastRow,
+                                     List<Animal> animals, List<Plants> plants,
+                                     byte[] scenario, RandomSource rand)
+    {
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        int layers = field.getLayers();
+        for(int layerRow = firstRow; layerRow < lastRow; layerRow++) {
+            int row = layerRow % depth;
+            int layer = layerRow / depth;
+            for(int col = 0; col < width; col++) {
+                int id;
+                if(scenario != null && layer == 0) {
+                    id = scenario[row * width + col] - 1;
                 }
-                else if(rand.nextDouble() <= SARDINE_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Sardine sardine = new Sardine(true, field, location);
-                    animals.add(sardine);
+                else {
+                    id = chooseSpecies(rand.nextInt() & 0xFFFFFFFFL);
+                    if(id >= 0 && Species.getLayerDistance(id, layer, layers) != 0) {
+                        id = -1;
+                    }
                 }
-                else if(rand.nextDouble() <= SEAWEED_CREATION_PROBABILITY) {
-                    Location location = new Location(row, col);
-                    Seaweed seaweed = new Seaweed(true, field, location);
-                    plants.add(seaweed);
+                if(id >= 0) {
+                    Object actor = Species.create(id, true, field, new Location(row, col, layer));
+                    if(actor instanceof Animal) {
+                        animals.add((Animal) actor);
+                    }
+                    else {
+                        plants.add((Plants) actor);
+                    }
                 }
                 // else leave the location empty.
             }
@@ -244,17 +830,29 @@ public class Simulator
     }
 
     /**
-     * Pause for a given time.
-     * @param millisec  The time to pause for, in milliseconds
+     * @return The species created for a draw, or -1 to leave the
+     *         location empty.
      */
-    private void delay(int millisec)
+    private static int chooseSpecies(long draw)
     {
-        try {
-            Thread.sleep(millisec);
-        }
-        catch (InterruptedException ie) {
-            // wake up
+        for(int id = 0; id < CREATION_THRESHOLDS.length; id++) {
+            if(draw < CREATION_THRESHOLDS[id]) {
+                return id;
+            }
         }
+        return -1;
     }
 
+    /**
+     * @return The greatest common divisor of two positive numbers.
+     */
+    private static int gcd(int a, int b)
+    {
+        while(b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
 }
@@ -29,6 +29,12 @@ public interface SimulatorView
      * @param field The field whose status is to be displayed.
      */
     void showStatus(int step, boolean time, Field field, String weather);
+
+    /**
+     * Show how fast the simulation is running.
+     * @param stepsPerSecond The achieved number of steps per second.
+     */
+    void showStepRate(double stepsPerSecond);
     
     /**
      * Prepare for a new run.
@@ -0,0 +1,455 @@
+/**
+ * The registry of the species in the simulation. Every species has a
+ * small integer id, and the rules between species are kept in arrays
+ * indexed by id:
+ *
+ *  - the age each species can live to;
+ *  - the diet of each species, as a bitmask with bit (1 << id) set for
+ *    every species it eats;
+ *  - the food value of each prey for each eater, i.e. how many steps the
+ *    eater can go before it has to eat again;
+ *  - which infected prey passes its infection on to the eater, and the
+ *    chance that the infection kills the eater;
+ *  - how the infection spreads by contact between neighbouring animals
+ *    (see Epidemic): how likely it is to pass on, how many steps an
+ *    infected animal incubates before it is infectious, and how many
+ *    steps it is infectious before it recovers;
+ *  - in which day phases and weathers each species is active. Dormant
+ *    actors only age and get hungry, which costs nothing (see
+ *    DeathCalendar), so the simulation skips them in those steps;
+ *  - the depths each species prefers in a field of several layers.
+ *
+ * Changing what eats what only means changing the rules set up below.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class Species
+{
+    // The ids of the species.
+    public static final int ORCA = 0;
+    public static final int SHARK = 1;
+    public static final int SCUBADIVER = 2;
+    public static final int SALMON = 3;
+    public static final int SARDINE = 4;
+    public static final int SEAWEED = 5;
+
+    // The class of each species, by id.
+    private static final Class<?>[] CLASSES = {
+        Orca.class, Shark.class, Scubadiver.class,
+        Salmon.class, Sardine.class, Seaweed.class
+    };
+    // The number of species.
+    private static final int COUNT = CLASSES.length;
+    // The id of each class, or -1 for classes that are not a species.
+    private static final ClassValue<Integer> IDS = new ClassValue<Integer>()
+    {
+        protected Integer computeValue(Class<?> type)
+        {
+            for(int id = 0; id < COUNT; id++) {
+                if(CLASSES[id] == type) {
+                    return id;
+                }
+            }
+            return -1;
+        }
+    };
+
+    // The age to which each species can live.
+    private static final int[] MAX_AGES = new int[COUNT];
+    // The diet of each species: a bitmask of the ids of its prey.
+    private static final int[] DIETS = new int[COUNT];
+    // The food value of each prey for each eater, at eater * COUNT + prey.
+    private static final int[] FOOD_VALUES = new int[COUNT * COUNT];
+    // For each eater, a bitmask of the prey whose infection it catches.
+    private static final int[] INFECTIOUS_PREY = new int[COUNT];
+    // For each eater, the threshold of RandomSource.chance to die of a caught infection.
+    private static final long[] INFECTION_DEATH_THRESHOLDS = new long[COUNT];
+    // The most infectious neighbours an animal can have, in a field of
+    // several layers.
+    private static final int MAX_CONTACTS = 26;
+    // The threshold of RandomSource.chance to catch the infection by contact,
+    // at id * (MAX_CONTACTS + 1) + number of infectious neighbours.
+    private static final long[] CONTACT_THRESHOLDS = new long[COUNT * (MAX_CONTACTS + 1)];
+    // The steps from being infected to being infectious, per species.
+    private static final int[] INCUBATION_STEPS = new int[COUNT];
+    // The steps an infected animal stays infectious, per species; 0 for ever.
+    private static final int[] RECOVERY_STEPS = new int[COUNT];
+    // The number of conditions an actor can be dormant in: day or night,
+    // times sunny, stormy or freezing weather.
+    private static final int CONDITIONS = 6;
+    // For each condition, a bitmask of the species that are active in it.
+    private static final int[] ACTIVE = new int[CONDITIONS];
+    // How many cells away each species sees its food, beyond the adjacent
+    // cells; 0 or 1 for only the adjacent cells.
+    private static final int[] PERCEPTION_RADII = new int[COUNT];
+    // The depths each species prefers, as fractions of the depth of the
+    // ocean from the surface (0) to the bottom (1).
+    private static final double[] TOP_DEPTHS = new double[COUNT];
+    private static final double[] BOTTOM_DEPTHS = new double[COUNT];
+
+    static {
+        livesTo(ORCA, Orca.MAX_AGE);
+        livesTo(SHARK, Shark.MAX_AGE);
+        livesTo(SCUBADIVER, Scubadiver.MAX_AGE);
+        livesTo(SALMON, Salmon.MAX_AGE);
+        livesTo(SARDINE, Sardine.MAX_AGE);
+        // Seaweed does not die of old age.
+        livesTo(SEAWEED, Integer.MAX_VALUE);
+
+        eats(SHARK, SARDINE, Shark.FOOD_VALUE);
+        eats(SHARK, SCUBADIVER, Shark.FOOD_VALUE);
+        eats(ORCA, SALMON, Orca.FOOD_VALUE);
+        eats(ORCA, SCUBADIVER, Orca.FOOD_VALUE);
+        eats(SARDINE, SEAWEED, Sardine.FOOD_VALUE);
+        eats(SALMON, SEAWEED, Salmon.FOOD_VALUE);
+
+        seesFoodWithin(SHARK, Shark.PERCEPTION_RADIUS);
+        seesFoodWithin(ORCA, Orca.PERCEPTION_RADIUS);
+
+        catchesInfection(ORCA, SALMON, Orca.DEATH_CHANCE);
+        catchesInfection(SARDINE, SEAWEED, Sardine.DEATH_CHANCE);
+        // Seaweed infects salmons but does not kill them.
+        catchesInfection(SALMON, SEAWEED, 0);
+
+        spreadsByContact(SARDINE, 0.04, 2, 10);
+        spreadsByContact(SALMON, 0.04, 2, 12);
+        spreadsByContact(ORCA, 0.02, 3, 15);
+
+        for(int condition = 0; condition < CONDITIONS; condition++) {
+            ACTIVE[condition] = (1 << COUNT) - 1;
+        }
+        // Scubadivers only dive on sunny days.
+        dormantAtNight(SCUBADIVER);
+        dormantWhen(SCUBADIVER, "stormy");
+        dormantWhen(SCUBADIVER, "freezing");
+        // Sharks and orcas rest in freezing weather; fish keep grazing.
+        dormantWhen(SHARK, "freezing");
+        dormantWhen(ORCA, "freezing");
+        // Seaweed only grows in the sun.
+        dormantWhen(SEAWEED, "stormy");
+        dormantWhen(SEAWEED, "freezing");
+
+        // Seaweed grows in the light near the surface, and the animals
+        // stay close to their food.
+        livesBetween(SEAWEED, 0, 0.25);
+        livesBetween(SCUBADIVER, 0, 0.2);
+        livesBetween(SARDINE, 0, 0.4);
+        livesBetween(SALMON, 0, 0.5);
+        livesBetween(ORCA, 0, 0.6);
+        livesBetween(SHARK, 0.1, 0.8);
+    }
+
+    /**
+     * @return The number of species.
+     */
+    public static int getCount()
+    {
+        return COUNT;
+    }
+
+    /**
+     * @return The id of a class of animal or plant, or -1 if it is not a species.
+     */
+    public static int getId(Class<?> type)
+    {
+        return IDS.get(type);
+    }
+
+    /**
+     * @return The id of the species of an animal or plant, or -1.
+     */
+    public static int getId(Object actor)
+    {
+        return IDS.get(actor.getClass());
+    }
+
+    /**
+     * @return The class of a species.
+     */
+    public static Class<?> getSpeciesClass(int id)
+    {
+        return CLASSES[id];
+    }
+
+    /**
+     * @return The bit of a species in a species bitmask.
+     */
+    public static int bit(int id)
+    {
+        return 1 << id;
+    }
+
+    /**
+     * @return The age to which a species can live; it dies when older.
+     */
+    public static int getMaxAge(int id)
+    {
+        return MAX_AGES[id];
+    }
+
+    /**
+     * @return The bitmask of the species that a species eats.
+     */
+    public static int getDiet(int eater)
+    {
+        return DIETS[eater];
+    }
+
+    /**
+     * @return How many cells away a species sees its food (see
+     *         Field.freeAdjacentLocationTowards); 0 or 1 for only the
+     *         adjacent cells.
+     */
+    public static int getPerceptionRadius(int id)
+    {
+        return PERCEPTION_RADII[id];
+    }
+
+    /**
+     * Set how many cells away a species sees its food, for all
+     * simulations. A predator with no food next to it moves towards the
+     * most food within the radius; with a radius of 0 it moves to a
+     * random free adjacent cell, as it did before it could see further.
+     * @param species The class of animal.
+     * @param radius The radius in cells, 0 for only the adjacent cells.
+     */
+    public static void setPerceptionRadius(Class<?> species, int radius)
+    {
+        int id = getId(species);
+        if(id < 0) {
+            throw new IllegalArgumentException("Not a species: " + species);
+        }
+        if(radius < 0) {
+            throw new IllegalArgumentException("Negative perception radius: " + radius);
+        }
+        seesFoodWithin(id, radius);
+    }
+
+    /**
+     * @return The number of steps an eater can go after eating a prey.
+     */
+    public static int getFoodValue(int eater, int prey)
+    {
+        return FOOD_VALUES[eater * COUNT + prey];
+    }
+
+    /**
+     * @return Whether an eater catches the infection of an infected prey.
+     */
+    public static boolean catchesInfection(int eater, int prey)
+    {
+        return (INFECTIOUS_PREY[eater] & bit(prey)) != 0;
+    }
+
+    /**
+     * @return The threshold of RandomSource.chance for an eater to die
+     *         of an infection caught from its prey.
+     */
+    public static long getInfectionDeathThreshold(int eater)
+    {
+        return INFECTION_DEATH_THRESHOLDS[eater];
+    }
+
+    /**
+     * @return Whether animals of a species can catch the infection by contact.
+     */
+    public static boolean spreadsByContact(int id)
+    {
+        return CONTACT_THRESHOLDS[id * (MAX_CONTACTS + 1) + 1] > 0;
+    }
+
+    /**
+     * @return The threshold of RandomSource.chance for an animal to catch
+     *         the infection from the given number of infectious neighbours.
+     */
+    public static long getContactThreshold(int id, int contacts)
+    {
+        return CONTACT_THRESHOLDS[id * (MAX_CONTACTS + 1) + contacts];
+    }
+
+    /**
+     * @return The steps from being infected to being infectious.
+     */
+    public static int getIncubationSteps(int id)
+    {
+        return INCUBATION_STEPS[id];
+    }
+
+    /**
+     * @return The steps an infected animal stays infectious, or 0 if it
+     *         does not recover.
+     */
+    public static int getRecoverySteps(int id)
+    {
+        return RECOVERY_STEPS[id];
+    }
+
+    /**
+     * Find the species that are active in a step. The others are dormant.
+     * @param isDay Whether it is day or night.
+     * @param weather The weather: "sunny", "stormy" or "freezing".
+     * @return The bitmask of the active species.
+     */
+    public static int getActiveSpecies(boolean isDay, String weather)
+    {
+        return ACTIVE[condition(isDay, weather)];
+    }
+
+    /**
+     * @return Whether a species is active in a step with the given day
+     *         phase and weather.
+     */
+    public static boolean isActive(int id, boolean isDay, String weather)
+    {
+        return (getActiveSpecies(isDay, weather) & bit(id)) != 0;
+    }
+
+    /**
+     * Tell how far a layer of a field is from the depths a species
+     * prefers. In a flat field every species is at home in its layer.
+     * @param id The species.
+     * @param layer The layer, 0 at the surface.
+     * @param layers The number of layers of the field.
+     * @return The number of layers between the layer and the nearest one
+     *         the species prefers, 0 if it prefers the layer.
+     */
+    public static int getLayerDistance(int id, int layer, int layers)
+    {
+        int top = (int) (TOP_DEPTHS[id] * layers);
+        int bottom = Math.max(top, (int) Math.ceil(BOTTOM_DEPTHS[id] * layers) - 1);
+        if(layer < top) {
+            return top - layer;
+        }
+        return layer > bottom ? layer - bottom : 0;
+    }
+
+    /**
+     * Create a new born animal or plant of a species.
+     * @param id The species.
+     * @param field The field to place it in.
+     * @param location Where to place it.
+     * @return The new Animal or Plants.
+     */
+    public static Object create(int id, Field field, Location location)
+    {
+        return create(id, false, field, location);
+    }
+
+    /**
+     * Create an animal or plant of a species.
+     * @param id The species.
+     * @param randomAge If true, it has a random age (and hunger level);
+     *                  if false, it is a new born.
+     * @param field The field to place it in.
+     * @param location Where to place it.
+     * @return The new Animal or Plants.
+     */
+    public static Object create(int id, boolean randomAge, Field field, Location location)
+    {
+        switch(id) {
+            case ORCA:
+                return new Orca(randomAge, field, location);
+            case SHARK:
+                return new Shark(randomAge, field, location);
+            case SCUBADIVER:
+                return new Scubadiver(randomAge, field, location);
+            case SALMON:
+                return new Salmon(randomAge, field, location);
+            case SARDINE:
+                return new Sardine(randomAge, field, location);
+            case SEAWEED:
+                return new Seaweed(randomAge, field, location);
+            default:
+                throw new IllegalArgumentException("Unknown species: " + id);
+        }
+    }
+
+    /**
+     * Set the age to which a species can live.
+     */
+    private static void livesTo(int id, int maxAge)
+    {
+        MAX_AGES[id] = maxAge;
+    }
+
+    /**
+     * Set the depths a species prefers, as fractions of the depth of the
+     * ocean.
+     */
+    private static void livesBetween(int id, double top, double bottom)
+    {
+        TOP_DEPTHS[id] = top;
+        BOTTOM_DEPTHS[id] = bottom;
+    }
+
+    /**
+     * Set how many cells away a species sees its food.
+     */
+    private static void seesFoodWithin(int id, int radius)
+    {
+        PERCEPTION_RADII[id] = radius;
+    }
+
+    /**
+     * Add a prey to the diet of an eater.
+     */
+    private static void eats(int eater, int prey, int foodValue)
+    {
+        DIETS[eater] |= bit(prey);
+        FOOD_VALUES[eater * COUNT + prey] = foodValue;
+    }
+
+    /**
+     * Let an eater catch the infection of a prey it eats.
+     */
+    private static void catchesInfection(int eater, int prey, double deathChance)
+    {
+        INFECTIOUS_PREY[eater] |= bit(prey);
+        INFECTION_DEATH_THRESHOLDS[eater] = RandomSource.threshold(deathChance);
+    }
+
+    /**
+     * Let the infection spread by contact between animals of a species.
+     * Each infectious neighbour passes it on with the given probability
+     * per step, independently of the others.
+     */
+    private static void spreadsByContact(int id, double transmissibility,
+                                         int incubationSteps, int recoverySteps)
+    {
+        for(int contacts = 0; contacts <= MAX_CONTACTS; contacts++) {
+            double chance = 1 - Math.pow(1 - transmissibility, contacts);
+            CONTACT_THRESHOLDS[id * (MAX_CONTACTS + 1) + contacts] = RandomSource.threshold(chance);
+        }
+        INCUBATION_STEPS[id] = incubationSteps;
+        RECOVERY_STEPS[id] = recoverySteps;
+    }
+
+    /**
+     * Make a species dormant at night, whatever the weather.
+     */
+    private static void dormantAtNight(int id)
+    {
+        for(String weather : new String[] { "sunny", "stormy", "freezing" }) {
+            ACTIVE[condition(false, weather)] &= ~bit(id);
+        }
+    }
+
+    /**
+     * Make a species dormant in some weather, by day and by night.
+     */
+    private static void dormantWhen(int id, String weather)
+    {
+        ACTIVE[condition(true, weather)] &= ~bit(id);
+        ACTIVE[condition(false, weather)] &= ~bit(id);
+    }
+
+    /**
+     * @return The index of a day phase and weather in ACTIVE.
+     */
+    private static int condition(boolean isDay, String weather)
+    {
+        int kind = weather == "freezing" ? 2 : weather == "stormy" ? 1 : 0;
+        return kind * 2 + (isDay ? 0 : 1);
+    }
+}
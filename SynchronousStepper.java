@@ -0,0 +1,284 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Steps the simulation in two phases, so that the result of a step does
+ * not depend on the order of the actors in the lists.
+ *
+ *  - Plan: every actor looks at the field as it was at the start of the
+ *    step and records what it wants to do in an Intent. Nothing is
+ *    changed, so the actors plan in parallel.
+ *  - Resolve: the actors claim the cells they want to eat from, move to
+ *    or give birth into. For each cell the claim with the highest
+ *    priority wins. Claims are made in parallel. The winning intents are
+ *    then written into the field in priority order.
+ *
+ * Every actor gets its own random generator and priority for a step,
+ * derived from the seed, the step number and the actor's cell, never
+ * from its position in the lists. The generator has a single stream, so
+ * its numbers do not depend on the threads that plan the actor and
+ * settle its meal. An actor that is eaten does nothing
+ * else in that step; losers of a cell stay where they are.
+ *
+ * Actors of species that are dormant in the step, in the weather of
+ * their region (see Species.getActiveSpecies and Field.getWeatherAt),
+ * do not plan or claim anything, and neither do the animals that die of
+ * old age or hunger in the step (see DeathCalendar). Those die once the
+ * eaters have fed, unless eaten.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class SynchronousStepper
+{
+    // The number of random ints an actor's generator makes at a time; an
+    // actor only draws a few numbers in a step.
+    private static final int RANDOM_BUFFER_SIZE = 8;
+
+    // The seed from which the actors' random generators are derived.
+    private long seed;
+    // The highest priority claiming each cell in the current step, or 0.
+    private AtomicLongArray eatClaims, moveClaims, birthClaims;
+    // The depth and width of the field, to number its cells.
+    private int depth, width;
+
+    /**
+     * Create a stepper.
+     * @param seed The seed for the actors' random generators.
+     */
+    public SynchronousStepper(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Run a step on all animals and plants, removing the dead ones from
+     * the lists and adding the newborns.
+     * @param field The field of the actors.
+     * @param animals The animals to act.
+     * @param plants The plants to act.
+     * @param step The number of the step.
+     * @param isDay Whether it is day or night.
+     * @param weather Current weather condition.
+     */
+    public void step(Field field, List<Animal> animals, List<Plants> plants,
+                     int step, boolean isDay, String weather)
+    {
+        prepare(field);
+        List<Animal> dying = field.getDeathCalendar().takeDue(step);
+
+        // Plan.
+        List<Intent> intents = Stream.concat(
+            animals.parallelStream()
+                   .filter(animal -> animal.isAlive() && animal.getDeathStep() != step)
+                   .map(animal -> {
+                       String local = field.getWeatherAt(animal.getLocation(), weather);
+                       if(!Species.isActive(animal.getSpeciesId(), isDay, local)) {
+                           return null;
+                       }
+                       Intent intent = newIntent(animal, animal.getLocation(), step);
+                       animal.plan(intent, isDay, local);
+                       return intent;
+                   }),
+            plants.parallelStream()
+                  .filter(Plants::isAlive)
+                  .map(plant -> {
+                      String local = field.getWeatherAt(plant.getLocation(), weather);
+                      if(!Species.isActive(plant.getSpeciesId(), isDay, local)) {
+                          return null;
+                      }
+                      Intent intent = newIntent(plant, plant.getLocation(), step);
+                      plant.plan(intent, isDay, local);
+                      return intent;
+                  }))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+
+        // Resolve. An eater that is itself eaten loses its claim, so the
+        // eat claims are made twice: predator, grazer and plant chains
+        // are settled by the second round.
+        intents.parallelStream().forEach(this::claimEat);
+        List<Intent> eaters = intents.parallelStream()
+                                     .filter(intent -> intent.getEat() != null && !isEaten(intent))
+                                     .collect(Collectors.toList());
+        clear(eatClaims);
+        eaters.parallelStream().forEach(this::claimEat);
+        intents.parallelStream()
+               .filter(intent -> !isEaten(intent) && !intent.getDies())
+               .forEach(this::claimMoveAndBirths);
+
+        // Write the next state in priority order.
+        intents.sort(Comparator.comparingLong(Intent::getPriority));
+        List<Animal> newAnimals = new ArrayList<>();
+        List<Plants> newPlants = new ArrayList<>();
+        for(Intent intent : intents) {
+            if(isWinner(eatClaims, intent.getEat(), intent)) {
+                feed(field, intent);
+            }
+        }
+        for(Animal animal : dying) {
+            if(animal.isAlive()) {
+                animal.expire();
+            }
+        }
+        for(Intent intent : intents) {
+            Object actor = intent.getActor();
+            if(!ActorCodec.isAlive(actor) || isEaten(intent)) {
+                continue;
+            }
+            if(intent.getDies()) {
+                ActorCodec.remove(actor, intent.getDeathCause());
+                continue;
+            }
+            if(isWinner(moveClaims, intent.getMove(), intent)) {
+                ((Animal) actor).setLocation(intent.getMove());
+            }
+            ActorCodec.updateStats(actor);
+            for(Location birth : intent.getBirths()) {
+                if(isWinner(birthClaims, birth, intent) && moveClaims.get(cell(birth)) == 0
+                       && field.getObjectAt(birth) == null) {
+                    if(actor instanceof Animal) {
+                        newAnimals.add(((Animal) actor).createYoung(field, birth));
+                    }
+                    else {
+                        newPlants.add(((Plants) actor).createYoung(field, birth));
+                    }
+                    field.getEvents().birth(Species.getId(actor), birth);
+                }
+            }
+        }
+
+        animals.removeIf(animal -> !animal.isAlive());
+        plants.removeIf(plant -> !plant.isAlive());
+        newAnimals.forEach(Animal::updateStats);
+        newPlants.forEach(Plants::updateStats);
+        animals.addAll(newAnimals);
+        plants.addAll(newPlants);
+    }
+
+    /**
+     * Make sure the claim arrays fit the field and are empty.
+     */
+    private void prepare(Field field)
+    {
+        int cells = field.getLayers() * field.getDepth() * field.getWidth();
+        depth = field.getDepth();
+        width = field.getWidth();
+        if(eatClaims == null || eatClaims.length() != cells) {
+            eatClaims = new AtomicLongArray(cells);
+            moveClaims = new AtomicLongArray(cells);
+            birthClaims = new AtomicLongArray(cells);
+        }
+        else {
+            clear(eatClaims);
+            clear(moveClaims);
+            clear(birthClaims);
+        }
+    }
+
+    /**
+     * Create the intent of an actor, with its random generator and priority.
+     */
+    private Intent newIntent(Object actor, Location location, int step)
+    {
+        int cell = cell(location);
+        long hash = mix(seed ^ mix(step) ^ mix(cell + 0x9E3779B9L));
+        // The cell in the low bits makes the priorities unique and non-zero
+        // high bits keep them above the empty claim.
+        long priority = ((hash >>> 33) + 1) << 32 | cell;
+        // A single stream: the intent is drawn from by the thread that plans
+        // it and then by the one that settles the meals.
+        return new Intent(actor, location, new RandomSource(hash, RANDOM_BUFFER_SIZE, true),
+                          priority);
+    }
+
+    /**
+     * Claim the cell an actor wants to eat from.
+     */
+    private void claimEat(Intent intent)
+    {
+        if(intent.getEat() != null) {
+            eatClaims.accumulateAndGet(cell(intent.getEat()), intent.getPriority(), Math::max);
+        }
+    }
+
+    /**
+     * Claim the cells an actor wants to move to and give birth into.
+     */
+    private void claimMoveAndBirths(Intent intent)
+    {
+        if(intent.getMove() != null) {
+            moveClaims.accumulateAndGet(cell(intent.getMove()), intent.getPriority(), Math::max);
+        }
+        for(Location birth : intent.getBirths()) {
+            birthClaims.accumulateAndGet(cell(birth), intent.getPriority(), Math::max);
+        }
+    }
+
+    /**
+     * Remove the prey of an eater that won its claim, and let the eater
+     * feed and move into the prey's cell.
+     */
+    private void feed(Field field, Intent intent)
+    {
+        Object prey = field.getObjectAt(intent.getEat());
+        if(prey == null) {
+            return;
+        }
+        Animal eater = (Animal) intent.getActor();
+        field.getEvents().predation(eater.getSpeciesId(), Species.getId(prey), intent.getEat());
+        ActorCodec.remove(prey, EventBus.EATEN);
+        if(eater.eat(prey, intent.getRandom()) && intent.getMoveIn() && eater.isAlive()) {
+            eater.setLocation(intent.getEat());
+        }
+    }
+
+    /**
+     * @return Whether the actor of an intent is eaten in this step.
+     */
+    private boolean isEaten(Intent intent)
+    {
+        return eatClaims.get(cell(intent.getLocation())) != 0;
+    }
+
+    /**
+     * @return Whether an intent holds the winning claim on a cell.
+     */
+    private boolean isWinner(AtomicLongArray claims, Location location, Intent intent)
+    {
+        return location != null && claims.get(cell(location)) == intent.getPriority();
+    }
+
+    /**
+     * @return The number of a cell of the field.
+     */
+    private int cell(Location location)
+    {
+        return (location.getLayer() * depth + location.getRow()) * width + location.getCol();
+    }
+
+    /**
+     * Empty all claims of an array.
+     */
+    private static void clear(AtomicLongArray claims)
+    {
+        for(int i = 0; i < claims.length(); i++) {
+            claims.set(i, 0);
+        }
+    }
+
+    /**
+     * Scramble the bits of a number (the SplitMix64 finaliser).
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,4 +1,3 @@
-import java.util.Random;
 import java.lang.String;
 
 /**
@@ -11,12 +10,10 @@ import java.lang.String;
  */
 public class Weather
 {
-    // list of weather conditions(Testing purposes)
-    /*
-    private static final String[] weather = {
+    // The kinds of weather, each numbered by its index.
+    static final String[] KINDS = {
       "sunny", "stormy", "freezing"
-    } ;
-    */
+    };
 
     // Probability of a sunny weather.
     private static final double SUNNY_PROBABILITY = 0.70;
@@ -25,6 +22,13 @@ public class Weather
     // Probability of a freezing weather.
     private static final double FREEZING_PROBABILITY = 0.1;
 
+    // The number of ints the random generator of the weather draws at a time.
+    private static final int BUFFER_SIZE = 16;
+
+    // The random number generator to change the weather, by default one
+    // of its own, apart from the shared one the actors draw from.
+    private RandomSource rand;
+
     // Current weather in the simulation
     private String currentWeather;
     // weatherTimer counts for how many simulation steps a weather condition has been lasting.
@@ -33,11 +37,23 @@ public class Weather
     private int weatherPeriod;
 
     /**
-     * Constructor for objects of class Weather.
-     *
+     * Constructor for objects of class Weather. The weather changes by
+     * the draws of a random generator seeded from the seed of the
+     * simulation, so every simulation started afresh has the same weather,
+     * whichever thread steps it.
      */
     public Weather()
     {
+        this(new RandomSource(Randomizer.getSeed("weather"), BUFFER_SIZE, true));
+    }
+
+    /**
+     * Create a weather changing by the draws of its own random generator.
+     * @param random The random generator to change the weather.
+     */
+    public Weather(RandomSource random)
+    {
+        rand = random;
         weatherReset();
     }
 
@@ -46,7 +62,6 @@ public class Weather
      *  Chooses random Double(0 to 1) adn compares to weather condition probability
      */
     public void setWeather(){
-        Random rand = new Random();
         //If random Double is less than or equal to condition probability then weather changes
         if(rand.nextDouble() <= STORMY_PROBABILITY){
             currentWeather = "stormy";
@@ -71,7 +86,6 @@ public class Weather
      *  Sets for how many simulation steps a weather condition should last.
      */
     public void setWeatherPeriod(){
-        Random rand = new Random();
         //max length for freezing weather is 6 steps
         if(currentWeather == "freezing"){
           weatherPeriod = rand.nextInt(6);
@@ -81,6 +95,19 @@ public class Weather
         }
     }
 
+    /**
+     *  @param weather A kind of weather.
+     *  @return The number of the kind of weather in KINDS.
+     */
+    static int indexOf(String weather){
+        for(int i = 0; i < KINDS.length; i++){
+            if(weather == KINDS[i]){
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown weather: " + weather);
+    }
+
     /**
      *  Checks if a weather condition should change.
      *
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+/**
+ * The weather of the regions of a field: one kind of weather for each
+ * block of 32x32 cells, so that a storm or a freeze covers only part of
+ * the ocean.
+ *
+ * Weather fronts blow in from the west. Every few steps the weather of
+ * each row of blocks moves one block east, and the westernmost block
+ * mostly takes on the weather of the whole simulation (see Weather),
+ * sometimes keeping its own for a while. So a change of the weather
+ * sweeps across the field with a ragged front.
+ *
+ * The map is flat. In a field of several layers a block covers the
+ * 32x32 columns of cells under it, from the surface to the bottom, and
+ * the same weather holds in all of them.
+ *
+ * The blocks are a byte array of indexes in Weather.KINDS, and a move is
+ * one array copy per row of blocks, so updating the map costs next to
+ * nothing beside the actors.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class WeatherMap
+{
+    // The base 2 logarithm of the side of a block.
+    private static final int BLOCK_SHIFT = 5;
+    // Every how many steps the fronts move one block.
+    private static final int MOVE_STEPS = 2;
+    // The likelihood of the westernmost block taking on the weather of the
+    // simulation when the fronts move.
+    private static final double FRONT_PROBABILITY = 0.7;
+    private static final long FRONT_THRESHOLD = RandomSource.threshold(FRONT_PROBABILITY);
+    // The number of random ints generated at a time.
+    private static final int BUFFER_SIZE = 16;
+
+    // The number of rows and columns of blocks.
+    private int blocksDown, blocksAcross;
+    // The weather of each block, row by row, as an index in Weather.KINDS.
+    private byte[] blocks;
+    // The seed of the random generator, to start again the same way.
+    private long seed;
+    // The random generator of the fronts, apart from the actors' one. It
+    // has a single stream, whichever thread steps the map.
+    private RandomSource rand;
+    // The number of steps since the map was filled.
+    private int steps;
+
+    /**
+     * Create a map of the regions of a field.
+     * @param depth The depth of the field.
+     * @param width The width of the field.
+     * @param seed The seed of the random generator of the fronts.
+     * @param weather The weather to start with everywhere.
+     */
+    public WeatherMap(int depth, int width, long seed, String weather)
+    {
+        blocksDown = (depth + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+        blocksAcross = (width + (1 << BLOCK_SHIFT) - 1) >> BLOCK_SHIFT;
+        blocks = new byte[blocksDown * blocksAcross];
+        this.seed = seed;
+        rand = new RandomSource(seed, BUFFER_SIZE, true);
+        fill(weather);
+    }
+
+    /**
+     * Start again with the same weather everywhere.
+     * @param weather The weather.
+     */
+    public void fill(String weather)
+    {
+        Arrays.fill(blocks, (byte) Weather.indexOf(weather));
+        rand.setSeed(seed);
+        steps = 0;
+    }
+
+    /**
+     * Move the fronts on by a step.
+     * @param weather The weather of the simulation, blowing in from the west.
+     */
+    public void step(String weather)
+    {
+        steps++;
+        if(steps % MOVE_STEPS != 0) {
+            return;
+        }
+        byte incoming = (byte) Weather.indexOf(weather);
+        for(int start = 0; start < blocks.length; start += blocksAcross) {
+            byte edge = blocks[start];
+            System.arraycopy(blocks, start, blocks, start + 1, blocksAcross - 1);
+            blocks[start] = rand.chance(FRONT_THRESHOLD) ? incoming : edge;
+        }
+    }
+
+    /**
+     * @param location A location in the field.
+     * @return The weather at the location.
+     */
+    public String getWeather(Location location)
+    {
+        return getWeather(location.getRow(), location.getCol());
+    }
+
+    /**
+     * @param row A row of the field.
+     * @param col A column of the field.
+     * @return The weather in the cell.
+     */
+    public String getWeather(int row, int col)
+    {
+        return Weather.KINDS[blocks[(row >> BLOCK_SHIFT) * blocksAcross + (col >> BLOCK_SHIFT)]];
+    }
+}
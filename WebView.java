@@ -0,0 +1,559 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.awt.Color;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A view of the simulation for hosts without a display. It serves a web
+ * page on localhost which shows the field, and streams the field to it
+ * with Server-Sent Events.
+ *
+ * On every showStatus the field is copied into a grid of palette indices
+ * (0 for an empty cell, then one index per color set with setColor). The
+ * grid is handed to an encoder thread, which run-length encodes it:
+ * either the whole grid (a keyframe) or only the cells that changed
+ * since the last frame (a delta). A keyframe is sent every
+ * KEYFRAME_INTERVAL frames. Every frame is encoded once and the same
+ * bytes are sent to all browsers. A browser that connects, or that falls
+ * behind, gets the last keyframe and the deltas since it.
+ *
+ * If the simulation runs faster than the encoder, frames are dropped.
+ *
+ * Of a field of several layers only the surface is drawn. The page says
+ * so, and its population counts all layers.
+ *
+ * @author Daniel Koch and Jakub Grzelak
+ * @version 2020.02.23
+ */
+public class WebView implements SimulatorView
+{
+    // A keyframe is sent after this many deltas.
+    private static final int KEYFRAME_INTERVAL = 30;
+    // The number of messages a browser may fall behind before it is resent a keyframe.
+    private static final int CLIENT_BACKLOG = 64;
+    // The palette index of an actor with no color set.
+    private static final int UNKNOWN = 127;
+    // Colors used for empty locations and for actors with no color set.
+    private static final Color EMPTY_COLOR = Color.cyan;
+    private static final Color UNKNOWN_COLOR = Color.gray;
+
+    // The HTTP server, and the threads that run its connections.
+    private HttpServer server;
+    private ExecutorService connections;
+    // The thread encoding the frames.
+    private Thread encoder;
+    private volatile boolean stopped;
+
+    // The palette index of each class of actor.
+    private Map<Class<?>, Integer> palette;
+    // The palette index of each species, by Species id.
+    private byte[] speciesIndexes;
+    // The colors of the palette, by index.
+    private List<Color> colors;
+    // A statistics object computing and storing simulation information.
+    private FieldStats stats;
+    // The last step rate shown.
+    private volatile double stepRate;
+
+    // The latest field waiting to be encoded, or null.
+    private AtomicReference<Frame> pending;
+    // Grids given back by the encoder, for the next frames to reuse.
+    private ConcurrentLinkedQueue<byte[]> spareGrids;
+    // Whether the next frame must be a keyframe.
+    private volatile boolean forceKeyframe;
+
+    // The grid of the last encoded frame (encoder thread only).
+    private byte[] previous;
+    // The deltas encoded since the last keyframe (encoder thread only).
+    private int deltas;
+
+    // The connected browsers. All of the fields below are guarded by clients.
+    private List<BlockingQueue<byte[]>> clients;
+    // The last keyframe and the deltas since it.
+    private List<byte[]> sinceKeyframe;
+    // The palette message.
+    private byte[] paletteMessage;
+
+    /**
+     * Start serving the view on localhost.
+     * @param port The port to serve on, or 0 for any free port.
+     */
+    public WebView(int port)
+    {
+        palette = new LinkedHashMap<>();
+        speciesIndexes = new byte[Species.getCount()];
+        Arrays.fill(speciesIndexes, (byte) UNKNOWN);
+        colors = new ArrayList<>();
+        colors.add(EMPTY_COLOR);
+        stats = new FieldStats();
+        pending = new AtomicReference<>();
+        spareGrids = new ConcurrentLinkedQueue<>();
+        clients = new ArrayList<>();
+        sinceKeyframe = new ArrayList<>();
+        paletteMessage = makePaletteMessage();
+
+        try {
+            server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not serve on port " + port, e);
+        }
+        connections = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "WebView connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(connections);
+        server.createContext("/", this::servePage);
+        server.createContext("/frames", this::serveFrames);
+        server.start();
+
+        encoder = new Thread(this::encode, "WebView encoder");
+        encoder.setDaemon(true);
+        encoder.start();
+    }
+
+    /**
+     * @return The port the view is served on.
+     */
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop serving the view.
+     */
+    public void close()
+    {
+        stopped = true;
+        LockSupport.unpark(encoder);
+        server.stop(0);
+        connections.shutdownNow();
+    }
+
+    /**
+     * Define a color to be used for a given class of animal or a plant.
+     * @param actorClass The actor's Class object.
+     * @param color The color to be used for the given class.
+     */
+    public void setColor(Class<?> actorClass, Color color)
+    {
+        synchronized(clients) {
+            Integer index = palette.get(actorClass);
+            if(index == null) {
+                index = colors.size();
+                palette.put(actorClass, index);
+                colors.add(color);
+                int id = Species.getId(actorClass);
+                if(id >= 0) {
+                    speciesIndexes[id] = index.byteValue();
+                }
+            }
+            else {
+                colors.set(index, color);
+            }
+            paletteMessage = makePaletteMessage();
+            for(BlockingQueue<byte[]> client : clients) {
+                client.offer(paletteMessage);
+            }
+        }
+    }
+
+    /**
+     * Show the current status of the field. The field is copied here and
+     * encoded on the encoder thread.
+     * @param step Which iteration step it is.
+     * @param time What time of the day it is.
+     * @param field The field whose status is to be displayed.
+     * @param weatherCondition What weather is affecting the environment currently
+     */
+    public void showStatus(int step, boolean time, Field field, String weatherCondition)
+    {
+        int depth = field.getDepth();
+        int width = field.getWidth();
+        byte[] grid = spareGrids.poll();
+        if(grid == null || grid.length != depth * width) {
+            grid = new byte[depth * width];
+        }
+
+        int cell = 0;
+        for(int row = 0; row < depth; row++) {
+            for(int col = 0; col < width; col++) {
+                grid[cell] = getCellIndex(field, row, col);
+                cell++;
+            }
+        }
+        // The counts are taken from the field's bitboards.
+        stats.reset();
+
+        Frame frame = new Frame(step, time, weatherCondition, stats.getPopulationDetails(field),
+                                stepRate, depth, width, field.getLayers(), grid);
+        Frame dropped = pending.getAndSet(frame);
+        if(dropped != null) {
+            spareGrids.offer(dropped.grid);
+        }
+        LockSupport.unpark(encoder);
+    }
+
+    /**
+     * @return The palette index of a cell of the field.
+     */
+    private byte getCellIndex(Field field, int row, int col)
+    {
+        int id = field.getSpeciesAt(row, col);
+        if(id >= 0) {
+            return speciesIndexes[id];
+        }
+        Object actor = field.getObjectAt(row, col);
+        if(actor == null) {
+            return 0;
+        }
+        Integer index = palette.get(actor.getClass());
+        return (byte) (index != null ? index : UNKNOWN);
+    }
+
+    /**
+     * Show how fast the simulation is running.
+     * @param stepsPerSecond The achieved number of steps per second.
+     */
+    public void showStepRate(double stepsPerSecond)
+    {
+        stepRate = stepsPerSecond;
+    }
+
+    /**
+     * Determine whether the simulation should continue to run.
+     * @return true If there is more than one species alive.
+     */
+    public boolean isViable(Field field)
+    {
+        return stats.isViable(field);
+    }
+
+    /**
+     * Prepare for a new run.
+     */
+    public void reset()
+    {
+        stats.reset();
+        forceKeyframe = true;
+    }
+
+    /**
+     * Encode the pending frames until the view is closed.
+     */
+    private void encode()
+    {
+        while(!stopped) {
+            Frame frame = pending.getAndSet(null);
+            if(frame == null) {
+                LockSupport.park(this);
+            }
+            else {
+                boolean keyframe = forceKeyframe || previous == null
+                                   || previous.length != frame.grid.length
+                                   || deltas >= KEYFRAME_INTERVAL;
+                publish(encode(frame, keyframe), keyframe);
+            }
+        }
+    }
+
+    /**
+     * Encode a frame as a keyframe or as a delta to the previous one.
+     * @param frame The frame to encode.
+     * @param keyframe Whether to encode the whole grid.
+     * @return The Server-Sent Event of the frame.
+     */
+    private byte[] encode(Frame frame, boolean keyframe)
+    {
+        byte[] grid = frame.grid;
+        if(keyframe) {
+            forceKeyframe = false;
+            deltas = 0;
+        }
+        else {
+            deltas++;
+        }
+
+        // Runs of (length, value). In a delta a value of 0 means unchanged
+        // cells, and any other value the new palette index plus one.
+        ByteArrayOutputStream runs = new ByteArrayOutputStream();
+        int runValue = -1;
+        int runLength = 0;
+        for(int cell = 0; cell < grid.length; cell++) {
+            int value = grid[cell];
+            if(!keyframe) {
+                value = value == previous[cell] ? 0 : value + 1;
+            }
+            if(value != runValue && runLength > 0) {
+                writeRun(runs, runLength, runValue);
+                runLength = 0;
+            }
+            runValue = value;
+            runLength++;
+        }
+        if(runLength > 0) {
+            writeRun(runs, runLength, runValue);
+        }
+
+        if(previous != null) {
+            spareGrids.offer(previous);
+        }
+        previous = grid;
+
+        String data = "{\"step\":" + frame.step
+                      + ",\"day\":" + frame.isDay
+                      + ",\"weather\":" + quote(frame.weather)
+                      + ",\"population\":" + quote(frame.population)
+                      + ",\"rate\":" + Math.round(frame.stepRate * 10) / 10.0
+                      + ",\"layers\":" + frame.layers
+                      + ",\"key\":" + keyframe
+                      + ",\"depth\":" + frame.depth
+                      + ",\"width\":" + frame.width
+                      + ",\"cells\":\"" + Base64.getEncoder().encodeToString(runs.toByteArray())
+                      + "\"}";
+        return event("frame", data);
+    }
+
+    /**
+     * Send an encoded frame to all browsers.
+     */
+    private void publish(byte[] message, boolean keyframe)
+    {
+        synchronized(clients) {
+            if(keyframe) {
+                sinceKeyframe.clear();
+            }
+            sinceKeyframe.add(message);
+            for(BlockingQueue<byte[]> client : clients) {
+                if(!client.offer(message)) {
+                    // The browser fell behind: start it again from the last keyframe.
+                    client.clear();
+                    client.offer(paletteMessage);
+                    for(byte[] sent : sinceKeyframe) {
+                        client.offer(sent);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Serve the page that shows the field.
+     */
+    private void servePage(HttpExchange exchange) throws IOException
+    {
+        byte[] page = PAGE.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(200, page.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(page);
+        }
+    }
+
+    /**
+     * Stream the frames to a browser until it disconnects.
+     */
+    private void serveFrames(HttpExchange exchange) throws IOException
+    {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        BlockingQueue<byte[]> client = new ArrayBlockingQueue<>(CLIENT_BACKLOG);
+        synchronized(clients) {
+            client.offer(paletteMessage);
+            for(byte[] sent : sinceKeyframe) {
+                client.offer(sent);
+            }
+            clients.add(client);
+        }
+        try(OutputStream out = exchange.getResponseBody()) {
+            while(!stopped) {
+                out.write(client.take());
+                out.flush();
+            }
+        }
+        catch(IOException | InterruptedException e) {
+            // the browser went away, or the view was closed
+        }
+        finally {
+            synchronized(clients) {
+                clients.remove(client);
+            }
+        }
+    }
+
+    /**
+     * @return The Server-Sent Event with the colors of the palette.
+     */
+    private byte[] makePaletteMessage()
+    {
+        StringBuilder data = new StringBuilder("{\"colors\":[");
+        for(int index = 0; index < colors.size(); index++) {
+            if(index > 0) {
+                data.append(',');
+            }
+            data.append(hex(colors.get(index)));
+        }
+        data.append("],\"unknown\":").append(hex(UNKNOWN_COLOR)).append('}');
+        return event("palette", data.toString());
+    }
+
+    /**
+     * @return A color as a quoted CSS hex color.
+     */
+    private static String hex(Color color)
+    {
+        return String.format("\"#%06x\"", color.getRGB() & 0xFFFFFF);
+    }
+
+    /**
+     * Write a run of equal values: the length as a variable-length
+     * number (7 bits per byte, low bits first), then the value.
+     */
+    private static void writeRun(ByteArrayOutputStream out, int length, int value)
+    {
+        while(length >= 0x80) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(value);
+    }
+
+    /**
+     * @return A Server-Sent Event.
+     */
+    private static byte[] event(String name, String data)
+    {
+        return ("event: " + name + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A string as a JSON string literal.
+     */
+    private static String quote(String text)
+    {
+        if(text == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder("\"");
+        for(char c : text.toCharArray()) {
+            if(c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            }
+            else if(c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * The state of the field at one step, as handed to the encoder.
+     */
+    private static class Frame
+    {
+        final int step;
+        final boolean isDay;
+        final String weather;
+        final String population;
+        final double stepRate;
+        final int depth, width;
+        // The number of layers of the field, of which the surface is shown.
+        final int layers;
+        // The palette index of every cell, row by row.
+        final byte[] grid;
+
+        Frame(int step, boolean isDay, String weather, String population,
+              double stepRate, int depth, int width, int layers, byte[] grid)
+        {
+            this.step = step;
+            this.isDay = isDay;
+            this.weather = weather;
+            this.population = population;
+            this.stepRate = stepRate;
+            this.depth = depth;
+            this.width = width;
+            this.layers = layers;
+            this.grid = grid;
+        }
+    }
+
+    // The page that shows the field. It decodes the frames into a grid of
+    // palette indices and draws it on a canvas, one pixel per cell.
+    private static final String PAGE =
+        "<!DOCTYPE html>\n"
+        + "<html><head><meta charset=\"utf-8\"><title>Marine Predator and Pray Simulation</title>\n"
+        + "<style>body{font-family:sans-serif}canvas{image-rendering:pixelated;"
+        + "width:720px;border:1px solid #888}</style></head>\n"
+        + "<body><div id=\"info\">Waiting for the simulation...</div>\n"
+        + "<canvas id=\"field\"></canvas><div id=\"population\"></div>\n"
+        + "<script>\n"
+        + "const canvas = document.getElementById('field'), ctx = canvas.getContext('2d');\n"
+        + "let colors = [], unknown = [128, 128, 128], grid = null, image = null;\n"
+        + "function rgb(hex) { const v = parseInt(hex.substring(1), 16);"
+        + " return [v >> 16, (v >> 8) & 255, v & 255]; }\n"
+        + "const frames = new EventSource('frames');\n"
+        + "frames.addEventListener('palette', e => {\n"
+        + "  const p = JSON.parse(e.data); colors = p.colors.map(rgb); unknown = rgb(p.unknown);\n"
+        + "});\n"
+        + "frames.addEventListener('frame', e => {\n"
+        + "  const f = JSON.parse(e.data);\n"
+        + "  if(f.key) {\n"
+        + "    if(!image || canvas.width != f.width || canvas.height != f.depth) {\n"
+        + "      canvas.width = f.width; canvas.height = f.depth;\n"
+        + "      image = ctx.createImageData(f.width, f.depth);\n"
+        + "    }\n"
+        + "    grid = new Uint8Array(f.width * f.depth);\n"
+        + "  }\n"
+        + "  else if(!grid) { return; }\n"
+        + "  const runs = Uint8Array.from(atob(f.cells), c => c.charCodeAt(0));\n"
+        + "  let i = 0, cell = 0;\n"
+        + "  while(i < runs.length) {\n"
+        + "    let length = 0, shift = 0, b;\n"
+        + "    do { b = runs[i++]; length |= (b & 127) << shift; shift += 7; } while(b & 128);\n"
+        + "    const value = runs[i++];\n"
+        + "    if(f.key) { grid.fill(value, cell, cell + length); }\n"
+        + "    else if(value) { grid.fill(value - 1, cell, cell + length); }\n"
+        + "    cell += length;\n"
+        + "  }\n"
+        + "  for(let c = 0; c < grid.length; c++) {\n"
+        + "    const color = colors[grid[c]] || unknown;\n"
+        + "    image.data[4 * c] = color[0]; image.data[4 * c + 1] = color[1];\n"
+        + "    image.data[4 * c + 2] = color[2]; image.data[4 * c + 3] = 255;\n"
+        + "  }\n"
+        + "  ctx.putImageData(image, 0, 0);\n"
+        + "  document.getElementById('info').textContent = 'Step: ' + f.step\n"
+        + "    + (f.layers > 1 ? ' (surface of ' + f.layers + ' layers)' : '') + '  Time: '\n"
+        + "    + (f.day ? 'day' : 'night') + '  Current weather: ' + f.weather\n"
+        + "    + '  Steps per second: ' + f.rate;\n"
+        + "  document.getElementById('population').textContent = 'Population: ' + f.population;\n"
+        + "});\n"
+        + "</script></body></html>\n";
+}